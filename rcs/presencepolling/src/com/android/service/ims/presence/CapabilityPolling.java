@@ -561,10 +561,7 @@ public class CapabilityPolling {
         return (long)random;
     }
 
-    private void updateObsoleteItems() {
-        long current = System.currentTimeMillis();
-        long last = current - mCapabilityCacheExpiration;
-        long last3year = current - 3 * 365 * 24 * 3600000L;
+    /*package*/ static String getObsoleteItemsSelection(long last, long last3year) {
         StringBuilder sb = new StringBuilder();
         sb.append("((");
         sb.append(Contacts.Impl.VOLTE_CALL_CAPABILITY_TIMESTAMP + "<='" + last + "'");
@@ -573,9 +570,18 @@ public class CapabilityPolling {
         sb.append(") AND ");
         sb.append(Contacts.Impl.CONTACT_LAST_UPDATED_TIMESTAMP + ">='" + last3year + "'");
         sb.append(")");
+        return sb.toString();
+    }
+
+    private void updateObsoleteItems() {
+        long current = System.currentTimeMillis();
+        long last = current - mCapabilityCacheExpiration;
+        long last3year = current - 3 * 365 * 24 * 3600000L;
+        // Ordered by the last updated time, so that it is searched by the index of the
+        // CONTACT_LAST_UPDATED_TIMESTAMP instead of scanning the table in the order of _ID.
         EABContactManager.Query baseQuery = new EABContactManager.Query()
-                .setFilterByTime(sb.toString())
-                .orderBy(EABContactManager.COLUMN_ID,
+                .setFilterByTime(getObsoleteItemsSelection(last, last3year))
+                .orderBy(EABContactManager.COLUMN_LAST_UPDATED_TIMESTAMP,
                          EABContactManager.Query.ORDER_ASCENDING);
 
         Cursor cursor = null;
@@ -29,6 +29,8 @@
 package com.android.service.ims.presence;
 
 import android.accounts.Account;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
@@ -39,10 +41,14 @@ import android.provider.ContactsContract.Groups;
 
 import android.provider.ContactsContract;
 import android.provider.ContactsContract.CommonDataKinds.Phone;
+import android.text.TextUtils;
 
 import com.android.ims.internal.EABContract;
 import com.android.ims.internal.Logger;
 
+import java.util.ArrayList;
+import java.util.Map;
+
 public class ContactDbUtil {
     private static Logger logger = Logger.getLogger("ContactDbUtil");
 
@@ -93,4 +99,77 @@ public class ContactDbUtil {
         logger.debug("resetVtCapability count=" + count);
         return count;
     }
+
+    /**
+     * Updates the VT capability of a bunch of phone data rows. The current values are read by
+     * one query and the changed rows are written by one batch.
+     *
+     * @param capabilities whether VT is enabled for each data ID.
+     * @return the number of the updated rows.
+     */
+    public static int updateVtCapability(ContentResolver resolver,
+            Map<Long, Boolean> capabilities) {
+        if(resolver == null) {
+            logger.error("updateVtCapability, resolver = null");
+            return 0;
+        }
+        if (capabilities.isEmpty()) {
+            return 0;
+        }
+
+        String selection = ContactsContract.Data.MIMETYPE + " = '" + Phone.CONTENT_ITEM_TYPE
+                + "' and " + ContactsContract.Data._ID + " IN ("
+                + TextUtils.join(",", capabilities.keySet()) + ")";
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        final Cursor cursor = resolver.query(ContactsContract.Data.CONTENT_URI,
+                new String[] { ContactsContract.Data._ID, ContactsContract.Data.CARRIER_PRESENCE },
+                selection, null, null);
+        if (cursor != null) {
+            try {
+                while (cursor.moveToNext()) {
+                    long dataId = cursor.getLong(0);
+                    int oldValue = cursor.getInt(1);
+                    Boolean enable = capabilities.get(dataId);
+                    if (enable == null) {
+                        continue;
+                    }
+
+                    int newValue = enable ?
+                            (oldValue | ContactsContract.Data.CARRIER_PRESENCE_VT_CAPABLE) :
+                            (oldValue & ~ContactsContract.Data.CARRIER_PRESENCE_VT_CAPABLE);
+                    if (newValue == oldValue) {
+                        continue;
+                    }
+
+                    operations.add(ContentProviderOperation
+                            .newUpdate(ContactsContract.Data.CONTENT_URI)
+                            .withValue(ContactsContract.Data.CARRIER_PRESENCE, newValue)
+                            .withSelection(ContactsContract.Data._ID + "=" + dataId, null)
+                            .build());
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        if (operations.isEmpty()) {
+            return 0;
+        }
+
+        int count = 0;
+        try {
+            ContentProviderResult[] results = resolver.applyBatch(ContactsContract.AUTHORITY,
+                    operations);
+            for (ContentProviderResult result : results) {
+                if (result != null && result.count != null) {
+                    count += result.count;
+                }
+            }
+        } catch (Exception e) {
+            logger.error("updateVtCapability exception " + e);
+        }
+        logger.debug("updateVtCapability count=" + count);
+        return count;
+    }
 }
@@ -86,6 +86,24 @@ public final class Contacts {
         public static final String FORMATTED_NUMBER =
                 EABContract.EABColumns.FORMATTED_NUMBER;
 
+        /**
+         * Key defining the canonical number.
+         * <P>
+         * Type: TEXT
+         * </P>
+         */
+        public static final String CANONICAL_NUMBER =
+                EABContract.EABColumns.CANONICAL_NUMBER;
+
+        /**
+         * Key defining the min match of the number.
+         * <P>
+         * Type: TEXT
+         * </P>
+         */
+        public static final String MIN_MATCH =
+                EABContract.EABColumns.MIN_MATCH;
+
         /**
          * Key defining the contact number.
          * <P>
@@ -29,17 +29,24 @@
 package com.android.service.ims.presence;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteFullException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.net.Uri;
+import android.os.SystemProperties;
 
 import com.android.ims.internal.Logger;
 
@@ -49,11 +56,34 @@ public abstract class DatabaseContentProvider extends ContentProvider {
     //Constants
     public static final String ACTION_DEVICE_STORAGE_FULL = "com.android.vmm.DEVICE_STORAGE_FULL";
 
+    // Gives the other threads a chance to use the database during a long batch.
+    private static final int MAX_OPERATIONS_PER_YIELD_POINT = 100;
+
+    // The WAL size in pages which triggers a checkpoint at commit, <= 0 to keep the default of
+    // the platform. The larger interval checkpoints less often during the sync batches.
+    private static final String PROPERTY_WAL_AUTOCHECKPOINT = "persist.rcs.eab.wal_autocheckpoint";
+    private static final int DEFAULT_WAL_AUTOCHECKPOINT = 1000;
+
     //Fields
     protected SQLiteOpenHelper mDbHelper;
     /*package*/final int mDbVersion;
     private final String mDbName;
 
+    // The batch of this thread which is not committed yet, null out of a batch.
+    private final ThreadLocal<PendingBatch> mPendingBatch = new ThreadLocal<PendingBatch>();
+
+    /**
+     * The changes of a batch since the transaction was last committed.
+     */
+    private static final class PendingBatch {
+        // The Uris to notify once the changes are committed.
+        final LinkedHashSet<Uri> mNotifyUris = new LinkedHashSet<Uri>();
+
+        // An operation failed in its nested transaction, so SQLite would roll back the changes
+        // at the next commit even if the batch marked the transaction successful.
+        boolean mOperationFailed = false;
+    }
+
     /**
      * Initializes the DatabaseContentProvider
      * @param dbName the filename of the database
@@ -135,6 +165,23 @@ public abstract class DatabaseContentProvider extends ContentProvider {
             mDatabaseFile = context.getDatabasePath(name);
         }
 
+        @Override
+        public void onConfigure(SQLiteDatabase db) {
+            // The PRAGMA only applies to the connection it runs on. Until write-ahead logging
+            // is enabled, the pool has the primary connection only, which writes and so
+            // checkpoints. The pool keeps that connection open until the database is closed,
+            // and reopening the database configures it again.
+            int pages = SystemProperties.getInt(PROPERTY_WAL_AUTOCHECKPOINT,
+                    DEFAULT_WAL_AUTOCHECKPOINT);
+            if (pages > 0) {
+                DatabaseUtils.longForQuery(db, "PRAGMA wal_autocheckpoint=" + pages, null);
+            }
+
+            // The queries run on the reader connections of the pool while the writes run on
+            // the primary connection, so the long polling scans don't block the writes.
+            db.enableWriteAheadLogging();
+        }
+
         @Override
         public void onCreate(SQLiteDatabase db) {
             bootstrapDatabase(db);
@@ -165,10 +212,10 @@ public abstract class DatabaseContentProvider extends ContentProvider {
                 logger.error("getWritableDatabase exception " + e);
             }
 
-            // try to delete the database file
+            // try to delete the database file with its WAL files
             if (null != mDatabaseFile) {
                 logger.error("deleting mDatabaseFile.");
-                mDatabaseFile.delete();
+                SQLiteDatabase.deleteDatabase(mDatabaseFile);
             }
 
             // Return a freshly created database.
@@ -183,10 +230,10 @@ public abstract class DatabaseContentProvider extends ContentProvider {
                 logger.error("getReadableDatabase exception " + e);
             }
 
-            // try to delete the database file
+            // try to delete the database file with its WAL files
             if (null != mDatabaseFile) {
                 logger.error("deleting mDatabaseFile.");
-                mDatabaseFile.delete();
+                SQLiteDatabase.deleteDatabase(mDatabaseFile);
             }
 
             // Return a freshly created database.
@@ -214,20 +261,25 @@ public abstract class DatabaseContentProvider extends ContentProvider {
         if (isClosed(db)) {
             return result;
         }
+        boolean successful = false;
         try {
             //acquire reference to prevent from garbage collection
             db.acquireReference();
             //beginTransaction can throw a runtime exception
             //so it needs to be moved into the try
-            db.beginTransaction();
+            db.beginTransactionNonExclusive();
             result = deleteInternal(db, uri, selection, selectionArgs);
             db.setTransactionSuccessful();
+            successful = true;
         } catch (SQLiteFullException fullEx) {
             logger.error("" + fullEx);
             sendStorageFullIntent(getContext());
         } catch (Exception e) {
             logger.error("" + e);
         } finally {
+            if (!successful) {
+                onOperationFailed();
+            }
             try {
                 db.endTransaction();
             } catch (SQLiteFullException fullEx) {
@@ -240,7 +292,7 @@ public abstract class DatabaseContentProvider extends ContentProvider {
             db.releaseReference();
         }
         // don't check return value because it may be 0 if all rows deleted
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
         return result;
     }
 
@@ -262,19 +314,24 @@ public abstract class DatabaseContentProvider extends ContentProvider {
         if (isClosed(db)) {
             return result;
         }
+        boolean successful = false;
         try {
             db.acquireReference();
             //beginTransaction can throw a runtime exception
             //so it needs to be moved into the try
-            db.beginTransaction();
+            db.beginTransactionNonExclusive();
             result = insertInternal(db, uri, values);
             db.setTransactionSuccessful();
+            successful = true;
         } catch (SQLiteFullException fullEx) {
             logger.warn("" + fullEx);
             sendStorageFullIntent(getContext());
         } catch (Exception e) {
             logger.warn("" + e);
         } finally {
+            if (!successful) {
+                onOperationFailed();
+            }
             try {
                 db.endTransaction();
             } catch (SQLiteFullException fullEx) {
@@ -286,7 +343,7 @@ public abstract class DatabaseContentProvider extends ContentProvider {
             db.releaseReference();
         }
         if (result != null) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return result;
     }
@@ -345,19 +402,24 @@ public abstract class DatabaseContentProvider extends ContentProvider {
         if (isClosed(db)) {
             return result;
         }
+        boolean successful = false;
         try {
             db.acquireReference();
             //beginTransaction can throw a runtime exception
             //so it needs to be moved into the try
-            db.beginTransaction();
+            db.beginTransactionNonExclusive();
             result = updateInternal(db, uri, values, selection, selectionArgs);
             db.setTransactionSuccessful();
+            successful = true;
         } catch (SQLiteFullException fullEx) {
             logger.error("" + fullEx);
             sendStorageFullIntent(getContext());
         } catch (Exception e) {
             logger.error("" + e);
         } finally {
+            if (!successful) {
+                onOperationFailed();
+            }
             try {
                 db.endTransaction();
             } catch (SQLiteFullException fullEx) {
@@ -369,7 +431,7 @@ public abstract class DatabaseContentProvider extends ContentProvider {
             db.releaseReference();
         }
         if (result > 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return result;
     }
@@ -383,21 +445,32 @@ public abstract class DatabaseContentProvider extends ContentProvider {
             if (isClosed(db)) {
                 return added;
             }
+            boolean successful = false;
+            boolean committed = false;
+            // The rows added since the transaction was last committed.
+            int pending = 0;
             try {
                 db.acquireReference();
                 //beginTransaction can throw a runtime exception
                 //so it needs to be moved into the try
-                db.beginTransaction();
+                db.beginTransactionNonExclusive();
 
                 for (int i = 0; i < numRows; i++) {
+                    // Yielding commits the rows added so far.
+                    if (i > 0 && (i % MAX_OPERATIONS_PER_YIELD_POINT) == 0
+                            && db.yieldIfContendedSafely()) {
+                        if (pending > 0) {
+                            notifyChange(uri);
+                        }
+                        pending = 0;
+                    }
                     if (insertInternal(db, uri, values[i]) != null) {
                         added++;
+                        pending++;
                     }
                 }
                 db.setTransactionSuccessful();
-                if (added > 0) {
-                    getContext().getContentResolver().notifyChange(uri, null);
-                }
+                successful = true;
             } catch (SQLiteFullException fullEx) {
                 logger.error("" + fullEx);
                 sendStorageFullIntent(getContext());
@@ -406,6 +479,7 @@ public abstract class DatabaseContentProvider extends ContentProvider {
             } finally {
                 try {
                     db.endTransaction();
+                    committed = successful;
                 } catch (SQLiteFullException fullEx) {
                     logger.error("" + fullEx);
                     sendStorageFullIntent(getContext());
@@ -414,10 +488,113 @@ public abstract class DatabaseContentProvider extends ContentProvider {
                 }
                 db.releaseReference();
             }
+            // Notify once the rows are committed.
+            if (committed && pending > 0) {
+                notifyChange(uri);
+            }
         }
         return added;
     }
 
+    /**
+     * Applies all the operations in one transaction, which yields to the other threads at the
+     * operations allowing it or after MAX_OPERATIONS_PER_YIELD_POINT operations. The changes
+     * of the operations are notified once for each Uri each time the transaction is committed,
+     * which a yield does too. An operation which fails aborts the batch with an
+     * OperationApplicationException, and the changes since the last yield are rolled back
+     * without being notified.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final int numOperations = operations.size();
+        final ContentProviderResult[] results = new ContentProviderResult[numOperations];
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        if (isClosed(db)) {
+            return results;
+        }
+
+        PendingBatch batch = new PendingBatch();
+        boolean successful = false;
+        boolean committed = false;
+        mPendingBatch.set(batch);
+        try {
+            db.acquireReference();
+            //beginTransaction can throw a runtime exception
+            //so it needs to be moved into the try
+            db.beginTransactionNonExclusive();
+
+            int opCount = 0;
+            int numYieldPoints = 0;
+            for (int i = 0; i < numOperations; i++) {
+                ContentProviderOperation operation = operations.get(i);
+                if (i > 0 && (operation.isYieldAllowed() ||
+                        opCount >= MAX_OPERATIONS_PER_YIELD_POINT)) {
+                    opCount = 0;
+                    if (db.yieldIfContendedSafely()) {
+                        numYieldPoints++;
+                        flushPendingBatch(batch);
+                    }
+                }
+                opCount++;
+                results[i] = operation.apply(this, results, i);
+                // The operation caught its exception, but the results must not report it as
+                // applied.
+                if (batch.mOperationFailed) {
+                    throw new OperationApplicationException("Failed to apply operation " + i,
+                            numYieldPoints);
+                }
+            }
+            db.setTransactionSuccessful();
+            successful = true;
+        } catch (SQLiteFullException fullEx) {
+            logger.error("" + fullEx);
+            sendStorageFullIntent(getContext());
+        } finally {
+            mPendingBatch.remove();
+            try {
+                db.endTransaction();
+                committed = successful;
+            } catch (SQLiteFullException fullEx) {
+                logger.error("" + fullEx);
+                sendStorageFullIntent(getContext());
+            } finally {
+                db.releaseReference();
+            }
+        }
+
+        if (committed) {
+            flushPendingBatch(batch);
+        }
+        return results;
+    }
+
+    // Called when a yield or the end of the batch committed its transaction.
+    private void flushPendingBatch(PendingBatch batch) {
+        for (Uri uri : batch.mNotifyUris) {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+        batch.mNotifyUris.clear();
+    }
+
+    // Notifies the change, or keeps it until the batch of this thread is committed.
+    private void notifyChange(Uri uri) {
+        PendingBatch batch = mPendingBatch.get();
+        if (batch != null) {
+            batch.mNotifyUris.add(uri);
+            return;
+        }
+        getContext().getContentResolver().notifyChange(uri, null);
+    }
+
+    // Marks the batch of this thread failed, applyBatch aborts it.
+    private void onOperationFailed() {
+        PendingBatch batch = mPendingBatch.get();
+        if (batch != null) {
+            batch.mOperationFailed = true;
+        }
+    }
+
     private void sendStorageFullIntent(Context context) {
         Intent fullStorageIntent = new Intent(ACTION_DEVICE_STORAGE_FULL);
         context.sendBroadcast(fullStorageIntent);
@@ -29,6 +29,8 @@
 package com.android.service.ims.presence;
 
 import android.content.Context;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
@@ -42,11 +44,11 @@ import android.text.format.Time;
 import android.text.TextUtils;
 
 import com.android.ims.internal.EABContract;
-import com.android.ims.internal.ContactNumberUtils;
 import com.android.ims.RcsPresenceInfo;
 import com.android.ims.internal.Logger;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 
 public class EABContactManager {
@@ -93,12 +95,17 @@ public class EABContactManager {
     private static final String[] DATA_QUERY_PROJECTION = new String[] {
         Contacts.Impl._ID,
         Contacts.Impl.FORMATTED_NUMBER,
-        EABContract.EABColumns.DATA_ID
+        EABContract.EABColumns.DATA_ID,
+        Contacts.Impl.CANONICAL_NUMBER
     };
     // Data Query Columns, which match the DATA_QUERY_PROJECTION
     private static final int DATA_QUERY_ID = 0;
     private static final int DATA_QUERY_FORMATTED_NUMBER = 1;
     private static final int DATA_QUERY_DATA_ID = 2;
+    private static final int DATA_QUERY_CANONICAL_NUMBER = 3;
+
+    // Keeps the selection args of a lookup under the limit of SQLite.
+    private static final int MAX_NUMBERS_PER_QUERY = 500;
 
 
     /**
@@ -754,6 +761,23 @@ public class EABContactManager {
         return whereClause.toString();
     }
 
+    /**
+     * Get a parameterized SQL WHERE clause to select the rows of a bunch of canonical numbers.
+     */
+    static String getWhereClauseForNumbers(int count) {
+        StringBuilder whereClause = new StringBuilder();
+        whereClause.append(Contacts.Impl.CANONICAL_NUMBER);
+        whereClause.append(" IN (");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                whereClause.append(",");
+            }
+            whereClause.append("?");
+        }
+        whereClause.append(")");
+        return whereClause.toString();
+    }
+
     /**
      * Get the selection args for a clause returned by {@link #getWhereClauseForIds(long[])}.
      */
@@ -873,12 +897,121 @@ public class EABContactManager {
             return 0;
         }
 
-        String number = rcsPresenceInfo.getContactNumber();
-        if (TextUtils.isEmpty(number)) {
-            logger.error("Failed to update for the contact number is empty.");
+        List<RcsPresenceInfo> rcsPresenceInfoList = new ArrayList<RcsPresenceInfo>(1);
+        rcsPresenceInfoList.add(rcsPresenceInfo);
+        return update(rcsPresenceInfoList, updateLastTimestamp);
+    }
+
+    /**
+     * Update the presence of all the contacts in the list, e.g. the contacts of a RLMI NOTIFY.
+     * The rows of all the numbers are looked up by one query and updated by one batch, which
+     * EABProvider applies in one transaction.
+     *
+     * @return the number of the updated rows.
+     */
+    public int update(List<RcsPresenceInfo> rcsPresenceInfoList, boolean updateLastTimestamp) {
+        if (rcsPresenceInfoList == null) {
             return 0;
         }
 
+        // The presence of each number, a number may be notified more than once.
+        LinkedHashMap<String, List<RcsPresenceInfo>> presenceInfos =
+                new LinkedHashMap<String, List<RcsPresenceInfo>>();
+        for (RcsPresenceInfo rcsPresenceInfo : rcsPresenceInfoList) {
+            if (rcsPresenceInfo == null) {
+                continue;
+            }
+
+            String number = rcsPresenceInfo.getContactNumber();
+            if (TextUtils.isEmpty(number)) {
+                logger.error("Failed to update for the contact number is empty.");
+                continue;
+            }
+
+            List<RcsPresenceInfo> infos = presenceInfos.get(number);
+            if (infos == null) {
+                infos = new ArrayList<RcsPresenceInfo>(1);
+                presenceInfos.put(number, infos);
+            }
+            infos.add(rcsPresenceInfo);
+        }
+        if (presenceInfos.isEmpty()) {
+            return 0;
+        }
+
+        long timestamp = System.currentTimeMillis();
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        LinkedHashMap<Long, Boolean> vtCapabilities = new LinkedHashMap<Long, Boolean>();
+        List<String> numbers = new ArrayList<String>(presenceInfos.keySet());
+        int count = 0;
+        try {
+            for (int start = 0; start < numbers.size(); start += MAX_NUMBERS_PER_QUERY) {
+                List<String> selectionArgs = numbers.subList(start,
+                        Math.min(numbers.size(), start + MAX_NUMBERS_PER_QUERY));
+                // The numbers are in the canonical form, so the rows are matched by the index.
+                Cursor cursor = mResolver.query(Contacts.Impl.CONTENT_URI, DATA_QUERY_PROJECTION,
+                        getWhereClauseForNumbers(selectionArgs.size()),
+                        selectionArgs.toArray(new String[selectionArgs.size()]), null);
+                if (cursor == null) {
+                    continue;
+                }
+
+                try {
+                    while (cursor.moveToNext()) {
+                        List<RcsPresenceInfo> infos = presenceInfos.get(
+                                cursor.getString(DATA_QUERY_CANONICAL_NUMBER));
+                        if (infos == null) {
+                            continue;
+                        }
+
+                        logger.debug("number=" + cursor.getString(DATA_QUERY_CANONICAL_NUMBER) +
+                                " numberInDB=" + cursor.getString(DATA_QUERY_FORMATTED_NUMBER));
+                        long id = cursor.getLong(DATA_QUERY_ID);
+                        for (RcsPresenceInfo rcsPresenceInfo : infos) {
+                            operations.add(ContentProviderOperation
+                                    .newUpdate(Contacts.Impl.CONTENT_URI)
+                                    .withValues(getPresenceValues(rcsPresenceInfo,
+                                            updateLastTimestamp, timestamp))
+                                    .withSelection(Contacts.Impl._ID + "=" + id, null)
+                                    .build());
+                            vtCapabilities.put(cursor.getLong(DATA_QUERY_DATA_ID),
+                                    rcsPresenceInfo.getServiceState(
+                                            RcsPresenceInfo.ServiceType.VT_CALL)
+                                    == RcsPresenceInfo.ServiceState.ONLINE);
+                        }
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+
+            if (operations.isEmpty()) {
+                logger.print("update rcsPresenceInfo to DB: update count=" + count);
+                return count;
+            }
+
+            int vtCount = ContactDbUtil.updateVtCapability(mResolver, vtCapabilities);
+            logger.print("update rcsPresenceInfo to Contact DB, count=" + vtCount);
+
+            ContentProviderResult[] results = mResolver.applyBatch(EABContract.AUTHORITY,
+                    operations);
+            for (ContentProviderResult result : results) {
+                if (result != null && result.count != null) {
+                    count += result.count;
+                }
+            }
+
+            logger.print("update rcsPresenceInfo to DB: update count=" + count +
+                    " rcsPresenceInfoList=" + rcsPresenceInfoList);
+        } catch(Exception e){
+            logger.error("updateCapability exception " + e);
+        }
+
+        return count;
+    }
+
+    private ContentValues getPresenceValues(RcsPresenceInfo rcsPresenceInfo,
+            boolean updateLastTimestamp, long timestamp) {
         ContentValues values = new ContentValues();
 
         int volteStatus = rcsPresenceInfo.getVolteStatus();
@@ -887,8 +1020,7 @@ public class EABContactManager {
         }
 
         if(updateLastTimestamp){
-            values.put(Contacts.Impl.CONTACT_LAST_UPDATED_TIMESTAMP,
-                    (long)System.currentTimeMillis());
+            values.put(Contacts.Impl.CONTACT_LAST_UPDATED_TIMESTAMP, timestamp);
         }
 
         int lteCallCapability = rcsPresenceInfo.getServiceState(
@@ -928,47 +1060,7 @@ public class EABContactManager {
             values.put(Contacts.Impl.VIDEO_CALL_CAPABILITY_TIMESTAMP, videoCallTimestamp);
         }
 
-        int count = 0;
-        Cursor cursor = null;
-        try{
-            cursor = mResolver.query(Contacts.Impl.CONTENT_URI, DATA_QUERY_PROJECTION,
-                    "PHONE_NUMBERS_EQUAL(" + Contacts.Impl.FORMATTED_NUMBER + ", ?, 1)",
-                    new String[] {number}, null);
-            if(cursor == null) {
-                logger.print("update rcsPresenceInfo to DB: update count=" + count);
-                return count;
-            }
-
-            ContactNumberUtils contactNumberUtils = ContactNumberUtils.getDefault();
-            for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
-                String numberInDB = cursor.getString(DATA_QUERY_FORMATTED_NUMBER);
-                logger.debug("number=" + number + " numberInDB=" + numberInDB +
-                        " formatedNumber in DB=" + contactNumberUtils.format(numberInDB));
-                if(number.equals(contactNumberUtils.format(numberInDB))) {
-                    count = ContactDbUtil.updateVtCapability(mResolver,
-                            cursor.getLong(DATA_QUERY_DATA_ID),
-                            (videoCallCapability == RcsPresenceInfo.ServiceState.ONLINE));
-                    logger.print("update rcsPresenceInfo to Contact DB, count=" + count);
-
-                    int id = cursor.getInt(DATA_QUERY_ID);
-                    count += mResolver.update(Contacts.Impl.CONTENT_URI, values,
-                            Contacts.Impl._ID + "=" + id, null);
-                    logger.debug("count=" + count);
-                }
-            }
-
-            logger.print("update rcsPresenceInfo to DB: update count=" + count +
-                    " rcsPresenceInfo=" + rcsPresenceInfo);
-        } catch(Exception e){
-            logger.error("updateCapability exception");
-        } finally {
-            if(cursor != null) {
-                cursor.close();
-                cursor = null;
-            }
-        }
-
-        return count;
+        return values;
     }
 }
 
@@ -44,6 +44,7 @@ import android.provider.ContactsContract;
 import android.provider.ContactsContract.Contacts;
 import android.provider.ContactsContract.Data;
 import android.provider.ContactsContract.CommonDataKinds.Phone;
+import android.telephony.PhoneNumberUtils;
 import android.text.TextUtils;
 
 import com.android.ims.internal.ContactNumberUtils;
@@ -54,6 +55,10 @@ public class EABDbUtil {
     static private Logger logger = Logger.getLogger("EABDbUtil");
     public static final String ACCOUNT_TYPE = "com.android.rcs.eab.account";
 
+    // Looks up the rows of a canonical number through the indexed columns.
+    public static final String NUMBER_KEYS_SELECTION = EABContract.EABColumns.MIN_MATCH
+            + "=? AND " + EABContract.EABColumns.CANONICAL_NUMBER + "=?";
+
     public static boolean validateAndSyncFromContactsDb(Context context) {
         logger.debug("Enter validateAndSyncFromContactsDb");
         boolean response = true;
@@ -417,4 +422,38 @@ public class EABDbUtil {
         logger.debug("Exit isSpecialNumber - result : " + result);
         return result;
     }
+
+    /**
+     * Returns the number which the presence results are matched against, that is the
+     * formatted number as ContactNumberUtils.format() returns it.
+     */
+    public static String getCanonicalNumber(String formattedNumber) {
+        return ContactNumberUtils.getDefault().format(formattedNumber);
+    }
+
+    public static String getMinMatch(String number) {
+        if (TextUtils.isEmpty(number)) {
+            return null;
+        }
+        return PhoneNumberUtils.toCallerIDMinMatch(number);
+    }
+
+    public static String[] getNumberKeysSelectionArgs(String canonicalNumber) {
+        return new String[] { getMinMatch(canonicalNumber), canonicalNumber };
+    }
+
+    /**
+     * Adds the canonical number and the min match of the formatted number to the values.
+     */
+    public static void putNumberKeys(ContentValues values) {
+        if (!values.containsKey(EABContract.EABColumns.FORMATTED_NUMBER)) {
+            return;
+        }
+
+        String formattedNumber = values.getAsString(EABContract.EABColumns.FORMATTED_NUMBER);
+        String canonicalNumber = getCanonicalNumber(formattedNumber);
+        values.put(EABContract.EABColumns.CANONICAL_NUMBER, canonicalNumber);
+        values.put(EABContract.EABColumns.MIN_MATCH,
+                getMinMatch(canonicalNumber != null ? canonicalNumber : formattedNumber));
+    }
 }
@@ -29,6 +29,7 @@
 package com.android.service.ims.presence;
 
 import java.io.FileNotFoundException;
+import java.util.HashSet;
 
 import android.content.ContentUris;
 import android.content.ContentValues;
@@ -44,7 +45,6 @@ import android.provider.BaseColumns;
 import android.provider.ContactsContract.Contacts;
 import android.content.ComponentName;
 
-import com.android.ims.internal.ContactNumberUtils;
 import com.android.ims.RcsPresenceInfo;
 import com.android.ims.internal.EABContract;
 import com.android.ims.internal.Logger;
@@ -58,7 +58,7 @@ public class EABProvider extends DatabaseContentProvider{
 
     private static final String EAB_DB_NAME = "rcseab.db";
 
-    private static final int EAB_DB_VERSION = 4;
+    private static final int EAB_DB_VERSION = 6;
 
     private static final int EAB_TABLE = 1;
 
@@ -99,6 +99,53 @@ public class EABProvider extends DatabaseContentProvider{
             + EABContract.EABColumns.CONTACT_LAST_UPDATED_TIMESTAMP + " LONG "
             + ");";
 
+    private static final String EAB_CANONICAL_NUMBER_INDEX_STATEMENT =
+            "create index if not exists eab_canonical_number_index on "
+            + EABContract.EABColumns.TABLE_NAME
+            + "(" + EABContract.EABColumns.CANONICAL_NUMBER + ");";
+
+    private static final String EAB_MIN_MATCH_INDEX_STATEMENT =
+            "create index if not exists eab_min_match_index on "
+            + EABContract.EABColumns.TABLE_NAME
+            + "(" + EABContract.EABColumns.MIN_MATCH + ");";
+
+    /* Statements to create the indexes of the hot queries. */
+    private static final String[] EAB_INDEX_STATEMENTS = new String[] {
+        // CapabilityPolling.doCapabilityDiscovery() and updateObsoleteItems()
+        "create index if not exists eab_last_updated_index on "
+                + EABContract.EABColumns.TABLE_NAME
+                + "(" + EABContract.EABColumns.CONTACT_LAST_UPDATED_TIMESTAMP + ");",
+        // CapabilityPolling.updateObsoleteItems()
+        "create index if not exists eab_volte_capability_timestamp_index on "
+                + EABContract.EABColumns.TABLE_NAME
+                + "(" + EABContract.EABColumns.VOLTE_CALL_CAPABILITY_TIMESTAMP + ");",
+        "create index if not exists eab_video_capability_timestamp_index on "
+                + EABContract.EABColumns.TABLE_NAME
+                + "(" + EABContract.EABColumns.VIDEO_CALL_CAPABILITY_TIMESTAMP + ");",
+        // EABService.verifyInsertOrUpdateAction() and the deletes of EABDbUtil
+        "create index if not exists eab_raw_contact_data_index on "
+                + EABContract.EABColumns.TABLE_NAME
+                + "(" + EABContract.EABColumns.RAW_CONTACT_ID + ", "
+                + EABContract.EABColumns.DATA_ID + ");",
+        "create index if not exists eab_contact_id_index on "
+                + EABContract.EABColumns.TABLE_NAME
+                + "(" + EABContract.EABColumns.CONTACT_ID + ");",
+        // EAB_GROUPITEMS_TABLE
+        "create index if not exists eab_capability_index on "
+                + EABContract.EABColumns.TABLE_NAME
+                + "(" + EABContract.EABColumns.VOLTE_CALL_CAPABILITY + ", "
+                + EABContract.EABColumns.VIDEO_CALL_CAPABILITY + ");"
+    };
+
+    /* Query of the contacts which support both VoLTE and VT call. */
+    /*package*/ static final String EAB_GROUPITEMS_QUERY = "select "
+            + EABContract.EABColumns.CONTACT_ID
+            + " from " + EABContract.EABColumns.TABLE_NAME
+            + " where " + EABContract.EABColumns.VOLTE_CALL_CAPABILITY + " >'"
+            + RcsPresenceInfo.ServiceState.OFFLINE + "' AND "
+            + EABContract.EABColumns.VIDEO_CALL_CAPABILITY + " >'"
+            + RcsPresenceInfo.ServiceState.OFFLINE + "'";
+
     private static final String EAB_DROP_STATEMENT = "drop table if exists "
             + EABContract.EABColumns.TABLE_NAME + ";";
 
@@ -166,6 +213,28 @@ public class EABProvider extends DatabaseContentProvider{
                 oldVersion++;
                 logger.debug("upgradeDatabase : DB has been upgraded to " + oldVersion);
             }
+            if (oldVersion == 4) {
+                // Look up the numbers through the indexed columns instead of scanning the
+                // table with PHONE_NUMBERS_EQUAL.
+                addColumn(db, EABContract.EABColumns.TABLE_NAME,
+                        EABContract.EABColumns.CANONICAL_NUMBER, "TEXT DEFAULT NULL");
+                addColumn(db, EABContract.EABColumns.TABLE_NAME,
+                        EABContract.EABColumns.MIN_MATCH, "TEXT DEFAULT NULL");
+                db.execSQL(EAB_CANONICAL_NUMBER_INDEX_STATEMENT);
+                db.execSQL(EAB_MIN_MATCH_INDEX_STATEMENT);
+                fillNumberKeys(db);
+
+                oldVersion++;
+                logger.debug("upgradeDatabase : DB has been upgraded to " + oldVersion);
+            }
+            if (oldVersion == 5) {
+                for (String statement : EAB_INDEX_STATEMENTS) {
+                    db.execSQL(statement);
+                }
+
+                oldVersion++;
+                logger.debug("upgradeDatabase : DB has been upgraded to " + oldVersion);
+            }
             // add further upgrade code above this
         } catch (SQLException exception) {
             logger.error("Exception during upgradeDatabase. " + exception.getMessage());
@@ -190,6 +259,32 @@ public class EABProvider extends DatabaseContentProvider{
         return true;
     }
 
+    // Fills the canonical number and the min match of the existing rows.
+    private void fillNumberKeys(SQLiteDatabase db) {
+        Cursor cursor = db.query(EABContract.EABColumns.TABLE_NAME,
+                new String[] {EABContract.EABColumns._ID,
+                        EABContract.EABColumns.FORMATTED_NUMBER},
+                EABContract.EABColumns.FORMATTED_NUMBER + " IS NOT NULL",
+                null, null, null, null);
+        if (cursor == null) {
+            return;
+        }
+
+        try {
+            while (cursor.moveToNext()) {
+                ContentValues values = new ContentValues();
+                values.put(EABContract.EABColumns.FORMATTED_NUMBER, cursor.getString(1));
+                EABDbUtil.putNumberKeys(values);
+                values.remove(EABContract.EABColumns.FORMATTED_NUMBER);
+                db.update(EABContract.EABColumns.TABLE_NAME, values,
+                        EABContract.EABColumns._ID + "=" + cursor.getLong(0), null);
+            }
+            logger.debug("fillNumberKeys count=" + cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
     @Override
     protected boolean downgradeDatabase(SQLiteDatabase db, int oldVersion, int newVersion) {
         logger.info("Enter: downgradeDatabase()");
@@ -244,6 +339,7 @@ public class EABProvider extends DatabaseContentProvider{
                 logger.debug("Exit: insertInternal() with null");
                 return null;
         }
+        EABDbUtil.putNumberKeys(values);
         values = verifyIfMdnExists(values);
         // Do the insert.
         logger.debug("Inserting to the table" + table + " values=" + values.toString());
@@ -280,19 +376,19 @@ public class EABProvider extends DatabaseContentProvider{
             case EAB_GROUPITEMS_TABLE:
                 SQLiteQueryBuilder sqb = new SQLiteQueryBuilder();
                 sqb.setTables(EABContract.EABColumns.TABLE_NAME);
-                String rawquery = "select DISTINCT " + EABContract.EABColumns.CONTACT_ID
-                        + " from " + EABContract.EABColumns.TABLE_NAME
-                        + " where " + EABContract.EABColumns.VOLTE_CALL_CAPABILITY + " >'" +
-                        RcsPresenceInfo.ServiceState.OFFLINE+"' AND "
-                        + EABContract.EABColumns.VIDEO_CALL_CAPABILITY + " >'"
-                        + RcsPresenceInfo.ServiceState.OFFLINE + "'";
+                // The duplicated contacts are skipped here, so that the query is done by
+                // the capability index instead of a scan for DISTINCT.
+                HashSet<String> contactIds = new HashSet<String>();
                 StringBuffer sb = new StringBuffer();
-                Cursor cursor = db.rawQuery(rawquery, null);
+                Cursor cursor = db.rawQuery(EAB_GROUPITEMS_QUERY, null);
                 if (cursor != null && cursor.moveToFirst()) {
                     do {
-                        if (sb.length() != 0) sb.append(",");
                         String contactId = cursor.getString(cursor
                                 .getColumnIndex(EABContract.EABColumns.CONTACT_ID));
+                        if (!contactIds.add(contactId)) {
+                            continue;
+                        }
+                        if (sb.length() != 0) sb.append(",");
                         sb.append(contactId);
                     } while (cursor.moveToNext());
                 }
@@ -353,6 +449,7 @@ public class EABProvider extends DatabaseContentProvider{
         }
 
         if (table != null && values != null) {
+            EABDbUtil.putNumberKeys(values);
             logger.debug("Updating the table " + table + " values= " + values.toString());
             result = db.update(table, values, selection, selectionArgs);
         }
@@ -422,58 +519,50 @@ public class EABProvider extends DatabaseContentProvider{
                 EABContract.EABColumns.VIDEO_CALL_CAPABILITY_TIMESTAMP,
                 EABContract.EABColumns.VIDEO_CALL_AVAILABILITY,
                 EABContract.EABColumns.VIDEO_CALL_AVAILABILITY_TIMESTAMP};
-        String whereClause = "PHONE_NUMBERS_EQUAL("
-                + EABContract.EABColumns.FORMATTED_NUMBER + ", ?, 0)";
-        String[] selectionArgs = new String[] { formattedNumber };
+        String canonicalNumber = cvalues.getAsString(EABContract.EABColumns.CANONICAL_NUMBER);
+        if (null == canonicalNumber) {
+            return cvalues;
+        }
         Cursor cursor = getContext().getContentResolver().query(EABContract.EABColumns.CONTENT_URI,
-                projection, whereClause, selectionArgs, null);
+                projection, EABDbUtil.NUMBER_KEYS_SELECTION,
+                EABDbUtil.getNumberKeysSelectionArgs(canonicalNumber), null);
         if ((null != cursor) && (cursor.getCount() > 0)) {
             logger.debug("Cursor count is " + cursor.getCount());
-            // Update data only from first valid cursor element.
-            while (cursor.moveToNext()) {
-                ContactNumberUtils contactNumberUtils = ContactNumberUtils.getDefault();
-                String eabFormattedNumber = cursor.getString(
-                        cursor.getColumnIndex(EABContract.EABColumns.FORMATTED_NUMBER));
-
-                // Use contactNumberUtils.format() to format both formattedNumber and
-                // eabFormattedNumber and then check if they are equal.
-                if(contactNumberUtils.format(formattedNumber).equals(
-                        contactNumberUtils.format(eabFormattedNumber))) {
-                    logger.debug("phoneNumber : "+ phoneNumber +" is already stored in EAB DB. "
-                            + " Hence inserting another copy.");
-                    cvalues.put(EABContract.EABColumns.VOLTE_CALL_SERVICE_CONTACT_ADDRESS,
-                            cursor.getString(cursor.getColumnIndex(
-                                  EABContract.EABColumns.VOLTE_CALL_SERVICE_CONTACT_ADDRESS)));
-                    cvalues.put(EABContract.EABColumns.VOLTE_CALL_CAPABILITY, cursor.getString(
-                            cursor.getColumnIndex(
-                                    EABContract.EABColumns.VOLTE_CALL_CAPABILITY)));
-                    cvalues.put(EABContract.EABColumns.VOLTE_CALL_CAPABILITY_TIMESTAMP,
-                            cursor.getLong(cursor.getColumnIndex(
-                                    EABContract.EABColumns.VOLTE_CALL_CAPABILITY_TIMESTAMP)));
-                    cvalues.put(EABContract.EABColumns.VOLTE_CALL_AVAILABILITY,
-                            cursor.getString(cursor.getColumnIndex(
-                                    EABContract.EABColumns.VOLTE_CALL_AVAILABILITY)));
-                    cvalues.put(EABContract.EABColumns.VOLTE_CALL_AVAILABILITY_TIMESTAMP,
-                            cursor.getLong(cursor.getColumnIndex(
-                                   EABContract.EABColumns.VOLTE_CALL_AVAILABILITY_TIMESTAMP)));
-                    cvalues.put(EABContract.EABColumns.VIDEO_CALL_SERVICE_CONTACT_ADDRESS,
-                            cursor.getString(cursor.getColumnIndex(
-                                  EABContract.EABColumns.VIDEO_CALL_SERVICE_CONTACT_ADDRESS)));
-                    cvalues.put(EABContract.EABColumns.VIDEO_CALL_CAPABILITY,
-                            cursor.getString(cursor.getColumnIndex(
-                                    EABContract.EABColumns.VIDEO_CALL_CAPABILITY)));
-                    cvalues.put(EABContract.EABColumns.VIDEO_CALL_CAPABILITY_TIMESTAMP,
-                            cursor.getLong(cursor.getColumnIndex(
-                                    EABContract.EABColumns.VIDEO_CALL_CAPABILITY_TIMESTAMP)));
-                    cvalues.put(EABContract.EABColumns.VIDEO_CALL_AVAILABILITY,
-                            cursor.getString(cursor.getColumnIndex(
-                                    EABContract.EABColumns.VIDEO_CALL_AVAILABILITY)));
-                    cvalues.put(EABContract.EABColumns.VIDEO_CALL_AVAILABILITY_TIMESTAMP,
-                            cursor.getLong(cursor.getColumnIndex(
-                                   EABContract.EABColumns.VIDEO_CALL_AVAILABILITY_TIMESTAMP)));
-                    cvalues.put(EABContract.EABColumns.CONTACT_LAST_UPDATED_TIMESTAMP, 0);
-                    break;
-                }
+            // Update data only from first cursor element.
+            if (cursor.moveToFirst()) {
+                logger.debug("phoneNumber : "+ phoneNumber +" is already stored in EAB DB. "
+                        + " Hence inserting another copy.");
+                cvalues.put(EABContract.EABColumns.VOLTE_CALL_SERVICE_CONTACT_ADDRESS,
+                        cursor.getString(cursor.getColumnIndex(
+                              EABContract.EABColumns.VOLTE_CALL_SERVICE_CONTACT_ADDRESS)));
+                cvalues.put(EABContract.EABColumns.VOLTE_CALL_CAPABILITY, cursor.getString(
+                        cursor.getColumnIndex(
+                                EABContract.EABColumns.VOLTE_CALL_CAPABILITY)));
+                cvalues.put(EABContract.EABColumns.VOLTE_CALL_CAPABILITY_TIMESTAMP,
+                        cursor.getLong(cursor.getColumnIndex(
+                                EABContract.EABColumns.VOLTE_CALL_CAPABILITY_TIMESTAMP)));
+                cvalues.put(EABContract.EABColumns.VOLTE_CALL_AVAILABILITY,
+                        cursor.getString(cursor.getColumnIndex(
+                                EABContract.EABColumns.VOLTE_CALL_AVAILABILITY)));
+                cvalues.put(EABContract.EABColumns.VOLTE_CALL_AVAILABILITY_TIMESTAMP,
+                        cursor.getLong(cursor.getColumnIndex(
+                               EABContract.EABColumns.VOLTE_CALL_AVAILABILITY_TIMESTAMP)));
+                cvalues.put(EABContract.EABColumns.VIDEO_CALL_SERVICE_CONTACT_ADDRESS,
+                        cursor.getString(cursor.getColumnIndex(
+                              EABContract.EABColumns.VIDEO_CALL_SERVICE_CONTACT_ADDRESS)));
+                cvalues.put(EABContract.EABColumns.VIDEO_CALL_CAPABILITY,
+                        cursor.getString(cursor.getColumnIndex(
+                                EABContract.EABColumns.VIDEO_CALL_CAPABILITY)));
+                cvalues.put(EABContract.EABColumns.VIDEO_CALL_CAPABILITY_TIMESTAMP,
+                        cursor.getLong(cursor.getColumnIndex(
+                                EABContract.EABColumns.VIDEO_CALL_CAPABILITY_TIMESTAMP)));
+                cvalues.put(EABContract.EABColumns.VIDEO_CALL_AVAILABILITY,
+                        cursor.getString(cursor.getColumnIndex(
+                                EABContract.EABColumns.VIDEO_CALL_AVAILABILITY)));
+                cvalues.put(EABContract.EABColumns.VIDEO_CALL_AVAILABILITY_TIMESTAMP,
+                        cursor.getLong(cursor.getColumnIndex(
+                               EABContract.EABColumns.VIDEO_CALL_AVAILABILITY_TIMESTAMP)));
+                cvalues.put(EABContract.EABColumns.CONTACT_LAST_UPDATED_TIMESTAMP, 0);
             }
         }
         if (null != cursor) {
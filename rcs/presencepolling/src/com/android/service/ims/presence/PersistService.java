@@ -39,13 +39,14 @@ import android.os.Message;
 import android.os.HandlerThread;
 import android.os.Process;
 import java.util.ArrayList;
+import java.util.List;
 import android.content.ContentValues;
-import android.text.TextUtils;
 
 import com.android.ims.internal.Logger;
 import com.android.ims.RcsManager.ResultCode;
 import com.android.ims.RcsPresence;
 import com.android.ims.RcsPresenceInfo;
+import com.android.ims.internal.IPresencePersist;
 
 /**
  * This service essentially plays the role of a "worker thread", allowing us to store
@@ -56,6 +57,7 @@ public class PersistService extends Service {
 
     private static final int MESSAGE_PRESENCE_CHANGED = 1;
     private static final int MESSAGE_PUBLISH_STATE_CHANGED = 2;
+    private static final int MESSAGE_PRESENCE_BATCH = 3;
 
     private int mVltProvisionErrorCount = 0;
     private Looper mServiceLooper = null;
@@ -108,9 +110,29 @@ public class PersistService extends Service {
 
     @Override
     public IBinder onBind(Intent intent) {
-        return null;
+        return mBinder;
     }
 
+    // The presence service passes the results by it while it is bound.
+    private final IPresencePersist.Stub mBinder = new IPresencePersist.Stub() {
+        @Override
+        public void onPresenceBatch(List<RcsPresenceInfo> presenceInfoList,
+                boolean updateLastTimestamp) {
+            Message msg = mServiceHandler.obtainMessage(MESSAGE_PRESENCE_BATCH);
+            msg.arg1 = updateLastTimestamp ? 1 : 0;
+            msg.obj = new ArrayList<RcsPresenceInfo>(presenceInfoList);
+            mServiceHandler.sendMessage(msg);
+        }
+
+        @Override
+        public void onPublishState(int publishState) {
+            Message msg = mServiceHandler.obtainMessage(MESSAGE_PUBLISH_STATE_CHANGED);
+            msg.obj = new Intent(RcsPresence.ACTION_PUBLISH_STATE_CHANGED).putExtra(
+                    RcsPresence.EXTRA_PUBLISH_STATE, publishState);
+            mServiceHandler.sendMessage(msg);
+        }
+    };
+
     private final class ServiceHandler extends Handler {
         public ServiceHandler(Looper looper) {
             super(looper);
@@ -130,7 +152,7 @@ public class PersistService extends Service {
             }
 
             int serviceId = msg.arg1;
-            Intent intent = (Intent)msg.obj;
+            Intent intent = msg.obj instanceof Intent ? (Intent)msg.obj : null;
             logger.print("handleMessage serviceId: " + serviceId + " intent: " + intent);
             switch (msg.what) {
                 case MESSAGE_PRESENCE_CHANGED:
@@ -157,6 +179,22 @@ public class PersistService extends Service {
                     }
                 break;
 
+                case MESSAGE_PRESENCE_BATCH: {
+                    // Only onPresenceBatch posts the message, with an ArrayList of the batch.
+                    @SuppressWarnings("unchecked")
+                    ArrayList<RcsPresenceInfo> rcsPresenceInfoList =
+                            (ArrayList<RcsPresenceInfo>)msg.obj;
+                    boolean updateLastTimestamp = msg.arg1 == 1;
+                    handlePresence(rcsPresenceInfoList, updateLastTimestamp);
+
+                    Intent presenceIntent = new Intent(RcsPresence.ACTION_PRESENCE_CHANGED);
+                    presenceIntent.putParcelableArrayListExtra(
+                            RcsPresence.EXTRA_PRESENCE_INFO_LIST, rcsPresenceInfoList);
+                    presenceIntent.putExtra("updateLastTimestamp", updateLastTimestamp);
+                    sendBroadcast(presenceIntent);
+                break;
+                }
+
                 default:
                     logger.debug("unknown message:" + msg);
             }
@@ -200,15 +238,19 @@ public class PersistService extends Service {
         ArrayList<RcsPresenceInfo> rcsPresenceInfoList = intent.getParcelableArrayListExtra(
                 RcsPresence.EXTRA_PRESENCE_INFO_LIST);
         boolean updateLastTimestamp = intent.getBooleanExtra("updateLastTimestamp", true);
+        handlePresence(rcsPresenceInfoList, updateLastTimestamp);
+    }
+
+    private void handlePresence(ArrayList<RcsPresenceInfo> rcsPresenceInfoList,
+            boolean updateLastTimestamp) {
+        if(rcsPresenceInfoList == null) {
+            return;
+        }
+
         logger.print("updateLastTimestamp=" + updateLastTimestamp +
                 " RcsPresenceInfoList=" + rcsPresenceInfoList);
-        for(int i=0; i< rcsPresenceInfoList.size(); i++){
-            RcsPresenceInfo rcsPresenceInfoTmp = rcsPresenceInfoList.get(i);
-            if((rcsPresenceInfoTmp != null) && !TextUtils.isEmpty(
-                    rcsPresenceInfoTmp.getContactNumber())){
-                mEABContactManager.update(rcsPresenceInfoTmp, updateLastTimestamp);
-            }
-        }
+        // All the contacts are updated in one transaction.
+        mEABContactManager.update(rcsPresenceInfoList, updateLastTimestamp);
     }
 }
 
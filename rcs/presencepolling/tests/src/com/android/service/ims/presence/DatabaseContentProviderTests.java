@@ -0,0 +1,397 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.service.ims.presence;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit Tests for the transactions and the notifications of DatabaseContentProvider.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseContentProviderTests extends PresencePollingTestBase {
+    private static final String TAG = "DatabaseContentProviderTests";
+
+    private static final String DB_NAME = "database_content_provider_tests.db";
+    private static final String TABLE_NAME = "items";
+    private static final String COLUMN_VALUE = "value";
+    // The value which fails the update.
+    private static final String FAILING_VALUE = "failing";
+    private static final Uri TABLE_URI = Uri.parse("content://com.android.service.ims.test/"
+            + TABLE_NAME);
+
+    private static final int CONTACT_COUNT = 5000;
+    private static final int WRITE_COUNT = 500;
+
+    private @Mock ContentResolver mResolver;
+
+    private File mDbFile;
+    private TestProvider mProvider;
+
+    /**
+     * Keeps the rows in a single table.
+     */
+    private static class TestProvider extends DatabaseContentProvider {
+        TestProvider() {
+            super(DB_NAME, 1);
+        }
+
+        @Override
+        protected void bootstrapDatabase(SQLiteDatabase db) {
+            db.execSQL("create table " + TABLE_NAME + " (_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + COLUMN_VALUE + " TEXT);");
+        }
+
+        @Override
+        protected boolean upgradeDatabase(SQLiteDatabase db, int oldVersion, int newVersion) {
+            return true;
+        }
+
+        @Override
+        protected boolean downgradeDatabase(SQLiteDatabase db, int oldVersion,
+                int newVersion) {
+            return true;
+        }
+
+        @Override
+        protected int deleteInternal(SQLiteDatabase db, Uri uri, String selection,
+                String[] selectionArgs) {
+            return db.delete(TABLE_NAME, selection, selectionArgs);
+        }
+
+        @Override
+        protected Uri insertInternal(SQLiteDatabase db, Uri uri, ContentValues values) {
+            long id = db.insert(TABLE_NAME, null, values);
+            return id > 0 ? ContentUris.withAppendedId(uri, id) : null;
+        }
+
+        @Override
+        protected Cursor queryInternal(SQLiteDatabase db, Uri uri, String[] projection,
+                String selection, String[] selectionArgs, String sortOrder) {
+            return db.query(TABLE_NAME, projection, selection, selectionArgs, null, null,
+                    sortOrder);
+        }
+
+        @Override
+        protected int updateInternal(SQLiteDatabase db, Uri uri, ContentValues values,
+                String selection, String[] selectionArgs) {
+            if (FAILING_VALUE.equals(values.getAsString(COLUMN_VALUE))) {
+                throw new SQLiteException("The update fails");
+            }
+            return db.update(TABLE_NAME, values, selection, selectionArgs);
+        }
+
+        @Override
+        public String getType(Uri uri) {
+            return null;
+        }
+
+        long getCount() {
+            return DatabaseUtils.queryNumEntries(mDbHelper.getReadableDatabase(), TABLE_NAME);
+        }
+
+        SQLiteDatabase getDatabase() {
+            return mDbHelper.getWritableDatabase();
+        }
+
+        void closeDatabase() {
+            mDbHelper.close();
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        mDbFile = new File(InstrumentationRegistry.getTargetContext().getCacheDir(), DB_NAME);
+        SQLiteDatabase.deleteDatabase(mDbFile);
+        when(mTestContext.getDatabasePath(anyString())).thenReturn(mDbFile);
+        when(mTestContext.getContentResolver()).thenReturn(mResolver);
+
+        mProvider = new TestProvider();
+        mProvider.attachInfo(mTestContext, null);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mProvider.shutdown();
+        SQLiteDatabase.deleteDatabase(mDbFile);
+        super.tearDown();
+    }
+
+    private static ContentValues createValues(int index) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_VALUE, "value" + index);
+        return values;
+    }
+
+    private static ArrayList<ContentProviderOperation> createInsertOperations(int count) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        for (int i = 0; i < count; i++) {
+            operations.add(ContentProviderOperation.newInsert(TABLE_URI)
+                    .withValues(createValues(i)).build());
+        }
+        return operations;
+    }
+
+    @SmallTest
+    @Test
+    public void testApplyBatchNotifiesOnceAfterCommit() throws Exception {
+        ArrayList<ContentProviderOperation> operations = createInsertOperations(10);
+        operations.add(ContentProviderOperation.newUpdate(TABLE_URI)
+                .withValue(COLUMN_VALUE, "updated").build());
+
+        assertEquals(11, mProvider.applyBatch(operations).length);
+
+        assertEquals(10, mProvider.getCount());
+        verify(mResolver, times(1)).notifyChange(TABLE_URI, null);
+    }
+
+    @SmallTest
+    @Test
+    public void testApplyBatchRollsBackWithoutNotification() throws Exception {
+        ArrayList<ContentProviderOperation> operations = createInsertOperations(10);
+        operations.add(ContentProviderOperation.newUpdate(TABLE_URI)
+                .withValue(COLUMN_VALUE, "updated").withExpectedCount(1).build());
+
+        try {
+            mProvider.applyBatch(operations);
+            fail("The expected count of the update doesn't match");
+        } catch (OperationApplicationException e) {
+            // expected
+        }
+
+        assertEquals(0, mProvider.getCount());
+        verify(mResolver, never()).notifyChange(any(Uri.class), any());
+    }
+
+    /**
+     * The update catches its exception and reports no row, but the batch is still aborted.
+     */
+    @SmallTest
+    @Test
+    public void testApplyBatchNestedFailureWithoutNotification() throws Exception {
+        ArrayList<ContentProviderOperation> operations = createInsertOperations(10);
+        operations.add(ContentProviderOperation.newUpdate(TABLE_URI)
+                .withValue(COLUMN_VALUE, FAILING_VALUE).build());
+        operations.addAll(createInsertOperations(10));
+
+        try {
+            mProvider.applyBatch(operations);
+            fail("The update fails");
+        } catch (OperationApplicationException e) {
+            // expected
+            assertEquals(0, e.getNumSuccessfulYieldPoints());
+        }
+
+        assertEquals(0, mProvider.getCount());
+        verify(mResolver, never()).notifyChange(any(Uri.class), any());
+    }
+
+    @SmallTest
+    @Test
+    public void testBulkInsertNotifiesOnce() throws Exception {
+        ContentValues[] values = new ContentValues[250];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = createValues(i);
+        }
+
+        assertEquals(250, mProvider.bulkInsert(TABLE_URI, values));
+
+        assertEquals(250, mProvider.getCount());
+        verify(mResolver, times(1)).notifyChange(TABLE_URI, null);
+    }
+
+    /**
+     * Compares the initial sync of CONTACT_COUNT contacts by applyBatch with the inserts of a
+     * transaction each, which the default applyBatch of ContentProvider did. Each committed
+     * transaction notifies the table once.
+     */
+    @LargeTest
+    @Test
+    public void testApplyBatchTime() throws Exception {
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < CONTACT_COUNT; i++) {
+            mProvider.insert(TABLE_URI, createValues(i));
+        }
+        long insertNs = SystemClock.elapsedRealtimeNanos() - start;
+        verify(mResolver, times(CONTACT_COUNT)).notifyChange(TABLE_URI, null);
+        mProvider.delete(TABLE_URI, null, null);
+        clearInvocations(mResolver);
+
+        start = SystemClock.elapsedRealtimeNanos();
+        mProvider.applyBatch(createInsertOperations(CONTACT_COUNT));
+        long batchNs = SystemClock.elapsedRealtimeNanos() - start;
+
+        Log.i(TAG, "contacts=" + CONTACT_COUNT + " insert=" + insertNs / 1000000 +
+                "ms applyBatch=" + batchNs / 1000000 + "ms");
+        assertEquals(CONTACT_COUNT, mProvider.getCount());
+        // Nothing else uses the database, so the batch never yields.
+        verify(mResolver, times(1)).notifyChange(TABLE_URI, null);
+    }
+
+    // Reads the checkpoint interval of the primary connection, on which the transactions run.
+    private static long getWalAutocheckpoint(SQLiteDatabase db) {
+        db.beginTransactionNonExclusive();
+        try {
+            return DatabaseUtils.longForQuery(db, "PRAGMA wal_autocheckpoint", null);
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void testWriteAheadLogging() throws Exception {
+        SQLiteDatabase db = mProvider.getDatabase();
+        assertTrue(db.isWriteAheadLoggingEnabled());
+        assertEquals("wal", DatabaseUtils.stringForQuery(db, "PRAGMA journal_mode", null));
+        assertEquals(1000, getWalAutocheckpoint(db));
+    }
+
+    /**
+     * A new primary connection, opened when the database is reopened, gets the checkpoint
+     * interval again.
+     */
+    @SmallTest
+    @Test
+    public void testWalAutocheckpointAfterReopen() throws Exception {
+        mProvider.insert(TABLE_URI, createValues(0));
+        SQLiteDatabase db = mProvider.getDatabase();
+        // Uses a reader connection too.
+        assertEquals(1, DatabaseUtils.queryNumEntries(db, TABLE_NAME));
+
+        mProvider.closeDatabase();
+        assertFalse(db.isOpen());
+
+        db = mProvider.getDatabase();
+        assertTrue(db.isWriteAheadLoggingEnabled());
+        assertEquals(1000, getWalAutocheckpoint(db));
+        assertEquals(1, mProvider.getCount());
+    }
+
+    // Updates WRITE_COUNT rows one by one and returns the longest update in ns.
+    private long writeRows(String value) {
+        long maxNs = 0;
+        for (int i = 0; i < WRITE_COUNT; i++) {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_VALUE, value);
+            long start = SystemClock.elapsedRealtimeNanos();
+            assertEquals(1, mProvider.update(TABLE_URI, values, "_id=?",
+                    new String[] {String.valueOf(i + 1)}));
+            maxNs = Math.max(maxNs, SystemClock.elapsedRealtimeNanos() - start);
+        }
+        return maxNs;
+    }
+
+    /**
+     * Runs the presence writes while another thread scans the table as the capability polling
+     * does, and compares the write time with the writes on an idle database.
+     */
+    @LargeTest
+    @Test
+    public void testScanWriteContention() throws Exception {
+        mProvider.applyBatch(createInsertOperations(CONTACT_COUNT));
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        long idleMaxNs = writeRows("idle");
+        long idleNs = SystemClock.elapsedRealtimeNanos() - start;
+
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicInteger scans = new AtomicInteger();
+        final Throwable[] scanError = new Throwable[1];
+        final CountDownLatch scanStarted = new CountDownLatch(1);
+        Thread scanner = new Thread(() -> {
+            try {
+                while (writing.get()) {
+                    Cursor cursor = mProvider.query(TABLE_URI, null, null, null,
+                            COLUMN_VALUE + " ASC");
+                    try {
+                        scanStarted.countDown();
+                        int rows = 0;
+                        while (cursor.moveToNext()) {
+                            rows++;
+                        }
+                        assertEquals(CONTACT_COUNT, rows);
+                    } finally {
+                        cursor.close();
+                    }
+                    scans.incrementAndGet();
+                }
+            } catch (Throwable t) {
+                scanError[0] = t;
+                scanStarted.countDown();
+            }
+        });
+        scanner.start();
+        scanStarted.await();
+
+        start = SystemClock.elapsedRealtimeNanos();
+        long contendedMaxNs = writeRows("contended");
+        long contendedNs = SystemClock.elapsedRealtimeNanos() - start;
+        writing.set(false);
+        scanner.join();
+
+        Log.i(TAG, "contacts=" + CONTACT_COUNT + " writes=" + WRITE_COUNT +
+                " idle=" + idleNs / 1000000 + "ms max=" + idleMaxNs / 1000 + "us" +
+                " contended=" + contendedNs / 1000000 + "ms max=" + contendedMaxNs / 1000 +
+                "us scans=" + scans.get());
+        assertNull(scanError[0]);
+        assertEquals(WRITE_COUNT, DatabaseUtils.queryNumEntries(mProvider.getDatabase(),
+                TABLE_NAME, COLUMN_VALUE + "=?", new String[] {"contended"}));
+    }
+}
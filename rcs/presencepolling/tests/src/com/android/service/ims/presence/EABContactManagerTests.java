@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.service.ims.presence;
+
+import static junit.framework.Assert.assertEquals;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.ims.RcsPresenceInfo;
+import com.android.ims.RcsPresenceInfo.ServiceState;
+import com.android.ims.RcsPresenceInfo.VolteStatus;
+import com.android.ims.internal.EABContract;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit Tests for the presence updates of EABContactManager.
+ */
+@RunWith(AndroidJUnit4.class)
+public class EABContactManagerTests extends PresencePollingTestBase {
+    private static final String TAG = "EABContactManagerTests";
+
+    private static final String DB_NAME = "eab_contact_manager_tests.db";
+
+    // The contacts of a RLMI NOTIFY.
+    private static final int CONTACT_COUNT = 100;
+
+    private @Mock ContentResolver mResolver;
+
+    private File mDbFile;
+    private EABProvider mProvider;
+    private EABContactManager mEABContactManager;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        mDbFile = new File(InstrumentationRegistry.getTargetContext().getCacheDir(), DB_NAME);
+        SQLiteDatabase.deleteDatabase(mDbFile);
+        when(mTestContext.getDatabasePath(anyString())).thenReturn(mDbFile);
+        when(mTestContext.getContentResolver()).thenReturn(mResolver);
+
+        mProvider = new EABProvider();
+        mProvider.attachInfo(mTestContext, null);
+
+        // The EAB calls go to the provider, the contacts provider has no rows.
+        when(mResolver.query(eq(Contacts.Impl.CONTENT_URI), any(), any(), any(), any()))
+                .thenAnswer(invocation -> mProvider.query(invocation.getArgument(0),
+                        invocation.getArgument(1), invocation.getArgument(2),
+                        invocation.getArgument(3), invocation.getArgument(4)));
+        when(mResolver.applyBatch(eq(EABContract.AUTHORITY), any()))
+                .thenAnswer(invocation -> mProvider.applyBatch(invocation.getArgument(1)));
+
+        mEABContactManager = new EABContactManager(mResolver, "com.android.service.ims.test");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mProvider.shutdown();
+        SQLiteDatabase.deleteDatabase(mDbFile);
+        super.tearDown();
+    }
+
+    private static String getNumber(int index) {
+        return "+1650555" + String.format("%04d", index);
+    }
+
+    private void insertContact(int index, long dataId) {
+        ContentValues values = new ContentValues();
+        values.put(EABContract.EABColumns.CONTACT_NUMBER, getNumber(index));
+        values.put(EABContract.EABColumns.FORMATTED_NUMBER, getNumber(index));
+        values.put(EABContract.EABColumns.DATA_ID, dataId);
+        EABDbUtil.putNumberKeys(values);
+        mProvider.mDbHelper.getWritableDatabase().insert(EABContract.EABColumns.TABLE_NAME,
+                null, values);
+    }
+
+    private static List<RcsPresenceInfo> createPresenceInfos(int count, int state) {
+        List<RcsPresenceInfo> infos = new ArrayList<RcsPresenceInfo>();
+        for (int i = 0; i < count; i++) {
+            infos.add(new RcsPresenceInfo(getNumber(i), VolteStatus.VOLTE_ENABLED,
+                    state, "sip:" + getNumber(i), 1000L + i, state, null, 2000L + i));
+        }
+        return infos;
+    }
+
+    private long getCountWithVolteCapability(int state) {
+        return DatabaseUtils.queryNumEntries(mProvider.mDbHelper.getReadableDatabase(),
+                EABContract.EABColumns.TABLE_NAME,
+                EABContract.EABColumns.VOLTE_CALL_CAPABILITY + "=?",
+                new String[] {String.valueOf(state)});
+    }
+
+    @SmallTest
+    @Test
+    public void testUpdateListInOneBatch() throws Exception {
+        for (int i = 0; i < CONTACT_COUNT; i++) {
+            insertContact(i, i + 1);
+        }
+
+        List<RcsPresenceInfo> infos = createPresenceInfos(CONTACT_COUNT, ServiceState.ONLINE);
+        // An empty number is skipped.
+        infos.add(new RcsPresenceInfo());
+
+        assertEquals(CONTACT_COUNT, mEABContactManager.update(infos, true));
+        assertEquals(CONTACT_COUNT, getCountWithVolteCapability(ServiceState.ONLINE));
+        verify(mResolver, times(1)).query(eq(Contacts.Impl.CONTENT_URI), any(), any(), any(),
+                any());
+        verify(mResolver, times(1)).applyBatch(eq(EABContract.AUTHORITY), any());
+        verify(mResolver, times(1)).notifyChange(Contacts.Impl.CONTENT_URI, null);
+    }
+
+    @SmallTest
+    @Test
+    public void testUpdateAllRowsOfNumber() throws Exception {
+        // The same number in two contacts.
+        insertContact(1, 1);
+        insertContact(1, 2);
+        insertContact(2, 3);
+
+        assertEquals(2, mEABContactManager.update(
+                createPresenceInfos(2, ServiceState.OFFLINE).get(1), true));
+        assertEquals(2, getCountWithVolteCapability(ServiceState.OFFLINE));
+    }
+
+    /**
+     * Compares the update of a RLMI NOTIFY by one batch with the update of each contact.
+     */
+    @LargeTest
+    @Test
+    public void testUpdateListTime() throws Exception {
+        for (int i = 0; i < CONTACT_COUNT; i++) {
+            insertContact(i, i + 1);
+        }
+
+        List<RcsPresenceInfo> infos = createPresenceInfos(CONTACT_COUNT, ServiceState.OFFLINE);
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (RcsPresenceInfo info : infos) {
+            mEABContactManager.update(info, true);
+        }
+        long singleNs = SystemClock.elapsedRealtimeNanos() - start;
+        assertEquals(CONTACT_COUNT, getCountWithVolteCapability(ServiceState.OFFLINE));
+
+        infos = createPresenceInfos(CONTACT_COUNT, ServiceState.ONLINE);
+        start = SystemClock.elapsedRealtimeNanos();
+        mEABContactManager.update(infos, true);
+        long listNs = SystemClock.elapsedRealtimeNanos() - start;
+        assertEquals(CONTACT_COUNT, getCountWithVolteCapability(ServiceState.ONLINE));
+
+        Log.i(TAG, "contacts=" + CONTACT_COUNT + " single=" + singleNs / 1000000 +
+                "ms list=" + listNs / 1000000 + "ms");
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.service.ims.presence;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.ims.internal.ContactNumberUtils;
+import com.android.ims.internal.EABContract;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit Tests for the number lookup and the query plans of the EAB database.
+ */
+@RunWith(AndroidJUnit4.class)
+public class EABProviderTests {
+    private static final String TAG = "EABProviderTests";
+
+    // The lookup of EABContactManager.update() before the number keys were added.
+    private static final String LEGACY_SELECTION =
+            "PHONE_NUMBERS_EQUAL(" + EABContract.EABColumns.FORMATTED_NUMBER + ", ?, 1)";
+
+    private static final int LOOKUP_COUNT = 20;
+
+    private static final String SELECT_ALL = "SELECT * FROM "
+            + EABContract.EABColumns.TABLE_NAME + " WHERE ";
+
+    private SQLiteDatabase mDb;
+
+    @Before
+    public void setUp() throws Exception {
+        mDb = SQLiteDatabase.create(null);
+        new EABProvider().bootstrapDatabase(mDb);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mDb.close();
+    }
+
+    private static String getNumber(int index) {
+        return "+1650" + String.format("%07d", index);
+    }
+
+    private void insertContacts(int count) {
+        mDb.beginTransaction();
+        try {
+            for (int i = 0; i < count; i++) {
+                ContentValues values = new ContentValues();
+                values.put(EABContract.EABColumns.CONTACT_NUMBER, getNumber(i));
+                values.put(EABContract.EABColumns.FORMATTED_NUMBER, getNumber(i));
+                EABDbUtil.putNumberKeys(values);
+                mDb.insert(EABContract.EABColumns.TABLE_NAME, null, values);
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+
+    private int lookupByNumberKeys(String number) {
+        Cursor cursor = mDb.query(EABContract.EABColumns.TABLE_NAME,
+                new String[] {EABContract.EABColumns._ID}, EABDbUtil.NUMBER_KEYS_SELECTION,
+                EABDbUtil.getNumberKeysSelectionArgs(number), null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int lookupLegacy(String number) {
+        Cursor cursor = mDb.query(EABContract.EABColumns.TABLE_NAME,
+                new String[] {EABContract.EABColumns.FORMATTED_NUMBER}, LEGACY_SELECTION,
+                new String[] {number}, null, null, null);
+        int count = 0;
+        try {
+            ContactNumberUtils contactNumberUtils = ContactNumberUtils.getDefault();
+            while (cursor.moveToNext()) {
+                if (number.equals(contactNumberUtils.format(cursor.getString(0)))) {
+                    count++;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return count;
+    }
+
+    @SmallTest
+    @Test
+    public void testPutNumberKeys() throws Exception {
+        ContentValues values = new ContentValues();
+        values.put(EABContract.EABColumns.FORMATTED_NUMBER, "16505551234");
+        EABDbUtil.putNumberKeys(values);
+
+        assertEquals("+16505551234", values.getAsString(EABContract.EABColumns.CANONICAL_NUMBER));
+        assertEquals("4321555", values.getAsString(EABContract.EABColumns.MIN_MATCH));
+    }
+
+    @SmallTest
+    @Test
+    public void testLookupByNumberKeys() throws Exception {
+        insertContacts(10);
+
+        assertEquals(1, lookupByNumberKeys(getNumber(3)));
+        assertEquals(lookupLegacy(getNumber(3)), lookupByNumberKeys(getNumber(3)));
+        assertEquals(0, lookupByNumberKeys("+16509999999"));
+    }
+
+    /**
+     * Compares the lookup time of a presence update with the PHONE_NUMBERS_EQUAL scan.
+     */
+    @LargeTest
+    @Test
+    public void testLookupLatency() throws Exception {
+        int inserted = 0;
+        for (int count : new int[] {1000, 10000, 50000}) {
+            insertContacts(count - inserted);
+            inserted = count;
+
+            long start = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < LOOKUP_COUNT; i++) {
+                assertEquals(1, lookupLegacy(getNumber(i * (count / LOOKUP_COUNT))));
+            }
+            long legacyNs = (SystemClock.elapsedRealtimeNanos() - start) / LOOKUP_COUNT;
+
+            start = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < LOOKUP_COUNT; i++) {
+                assertEquals(1, lookupByNumberKeys(getNumber(i * (count / LOOKUP_COUNT))));
+            }
+            long indexedNs = (SystemClock.elapsedRealtimeNanos() - start) / LOOKUP_COUNT;
+
+            Log.i(TAG, "rows=" + count + " legacy=" + legacyNs + "ns indexed=" + indexedNs + "ns");
+        }
+    }
+
+    // Fails if the query reads the whole table without an index or sorts the result.
+    private void assertNoFullTableScan(String sql) {
+        Cursor cursor = mDb.rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+        try {
+            int detailIndex = cursor.getColumnIndex("detail");
+            while (cursor.moveToNext()) {
+                String detail = cursor.getString(detailIndex);
+                Log.d(TAG, sql + " : " + detail);
+                assertFalse(sql + " : " + detail,
+                        detail.matches("SCAN (TABLE )?" + EABContract.EABColumns.TABLE_NAME));
+                assertFalse(sql + " : " + detail, detail.contains("TEMP B-TREE FOR ORDER BY"));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void testHotQueriesUseIndexes() throws Exception {
+        long current = System.currentTimeMillis();
+
+        // CapabilityPolling.doCapabilityDiscovery()
+        assertNoFullTableScan("SELECT * FROM " + EABContract.EABColumns.TABLE_NAME
+                + " ORDER BY " + EABContract.EABColumns.CONTACT_LAST_UPDATED_TIMESTAMP + " ASC");
+
+        // CapabilityPolling.updateObsoleteItems()
+        assertNoFullTableScan(SELECT_ALL
+                + CapabilityPolling.getObsoleteItemsSelection(current, current - 1000)
+                + " ORDER BY " + EABContract.EABColumns.CONTACT_LAST_UPDATED_TIMESTAMP + " ASC");
+
+        // EABService.verifyInsertOrUpdateAction()
+        assertNoFullTableScan(SELECT_ALL
+                + EABContract.EABColumns.DATA_ID + " ='1' AND "
+                + EABContract.EABColumns.RAW_CONTACT_ID + " ='2' AND "
+                + EABContract.EABColumns.CONTACT_ID + " ='3'");
+        assertNoFullTableScan(SELECT_ALL
+                + EABContract.EABColumns.RAW_CONTACT_ID + " ='2'");
+        assertNoFullTableScan(SELECT_ALL
+                + EABContract.EABColumns.CONTACT_ID + " ='3'");
+
+        // EAB_GROUPITEMS_TABLE
+        assertNoFullTableScan(EABProvider.EAB_GROUPITEMS_QUERY);
+
+        // EABProvider.verifyIfMdnExists()
+        assertNoFullTableScan(SELECT_ALL + EABDbUtil.NUMBER_KEYS_SELECTION
+                .replace("?", "'+16505551234'"));
+
+        // EABContactManager.update()
+        assertNoFullTableScan(SELECT_ALL + EABContactManager.getWhereClauseForNumbers(3)
+                .replaceFirst("\\?", "'+16505551234'")
+                .replaceFirst("\\?", "'+16505551235'")
+                .replaceFirst("\\?", "'+16505551236'"));
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.service.ims.presence;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import android.os.Bundle;
+import android.os.Parcel;
+import android.os.SystemClock;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.ims.RcsPresenceInfo;
+import com.android.ims.RcsPresenceInfo.ServiceInfoKey;
+import com.android.ims.RcsPresenceInfo.ServiceState;
+import com.android.ims.RcsPresenceInfo.ServiceType;
+import com.android.ims.RcsPresenceInfo.VolteStatus;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit Tests for the Parcel format of RcsPresenceInfo.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RcsPresenceInfoTests {
+    private static final String TAG = "RcsPresenceInfoTests";
+
+    private static RcsPresenceInfo createPresenceInfo(int index) {
+        return new RcsPresenceInfo("+1650555" + String.format("%04d", index),
+                VolteStatus.VOLTE_ENABLED,
+                ServiceState.ONLINE, "tel:+1650555" + index, 1000L + index,
+                ServiceState.OFFLINE, null, 2000L + index);
+    }
+
+    // Writes the Bundle which the earlier versions of RcsPresenceInfo wrote.
+    private static void writeLegacy(Parcel dest, RcsPresenceInfo info) {
+        Bundle bundle = new Bundle();
+        bundle.putString("contact_number", info.getContactNumber());
+        bundle.putInt(RcsPresenceInfo.VOLTE_STATUS, info.getVolteStatus());
+        for (int serviceType : new int[] {ServiceType.VOLTE_CALL, ServiceType.VT_CALL}) {
+            Bundle capability = new Bundle();
+            capability.putInt(ServiceInfoKey.SERVICE_TYPE, serviceType);
+            capability.putInt(ServiceInfoKey.STATE, info.getServiceState(serviceType));
+            capability.putString(ServiceInfoKey.SERVICE_CONTACT,
+                    info.getServiceContact(serviceType));
+            capability.putLong(ServiceInfoKey.TIMESTAMP, info.getTimeStamp(serviceType));
+            bundle.putBundle(String.valueOf(serviceType), capability);
+        }
+        bundle.writeToParcel(dest, 0);
+    }
+
+    private static void assertPresenceInfoEquals(RcsPresenceInfo expected,
+            RcsPresenceInfo actual) {
+        assertEquals(expected.getContactNumber(), actual.getContactNumber());
+        assertEquals(expected.getVolteStatus(), actual.getVolteStatus());
+        for (int serviceType : new int[] {ServiceType.VOLTE_CALL, ServiceType.VT_CALL}) {
+            assertEquals(expected.getServiceState(serviceType),
+                    actual.getServiceState(serviceType));
+            assertEquals(expected.getServiceContact(serviceType),
+                    actual.getServiceContact(serviceType));
+            assertEquals(expected.getTimeStamp(serviceType), actual.getTimeStamp(serviceType));
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void testParcelRoundTrip() throws Exception {
+        RcsPresenceInfo info = createPresenceInfo(1);
+        Parcel parcel = Parcel.obtain();
+        info.writeToParcel(parcel, 0);
+        parcel.writeInt(42);
+        parcel.setDataPosition(0);
+
+        assertPresenceInfoEquals(info, RcsPresenceInfo.CREATOR.createFromParcel(parcel));
+        // The next value is read from the right position.
+        assertEquals(42, parcel.readInt());
+        parcel.recycle();
+    }
+
+    @SmallTest
+    @Test
+    public void testParcelRoundTripWithoutServiceInfo() throws Exception {
+        RcsPresenceInfo info = new RcsPresenceInfo();
+        Parcel parcel = Parcel.obtain();
+        info.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+
+        RcsPresenceInfo result = RcsPresenceInfo.CREATOR.createFromParcel(parcel);
+        assertEquals(null, result.getContactNumber());
+        assertEquals(ServiceState.UNKNOWN, result.getServiceState(ServiceType.VOLTE_CALL));
+        assertEquals("", result.getServiceContact(ServiceType.VT_CALL));
+        assertEquals(0L, result.getTimeStamp(ServiceType.VT_CALL));
+        parcel.recycle();
+    }
+
+    @SmallTest
+    @Test
+    public void testReadLegacyParcel() throws Exception {
+        RcsPresenceInfo info = createPresenceInfo(2);
+        Parcel parcel = Parcel.obtain();
+        writeLegacy(parcel, info);
+        parcel.writeInt(42);
+        parcel.setDataPosition(0);
+
+        assertPresenceInfoEquals(info, RcsPresenceInfo.CREATOR.createFromParcel(parcel));
+        assertEquals(42, parcel.readInt());
+        parcel.recycle();
+    }
+
+    /**
+     * Compares the parcel size and the marshal/unmarshal time with the Bundle format.
+     */
+    @SmallTest
+    @Test
+    public void testParcelSizeAndTime() throws Exception {
+        for (int count : new int[] {1, 100, 1000}) {
+            RcsPresenceInfo[] infos = new RcsPresenceInfo[count];
+            for (int i = 0; i < count; i++) {
+                infos[i] = createPresenceInfo(i);
+            }
+
+            Parcel legacy = Parcel.obtain();
+            long start = SystemClock.elapsedRealtimeNanos();
+            for (RcsPresenceInfo info : infos) {
+                writeLegacy(legacy, info);
+            }
+            long legacyWriteNs = SystemClock.elapsedRealtimeNanos() - start;
+
+            legacy.setDataPosition(0);
+            start = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < count; i++) {
+                RcsPresenceInfo.CREATOR.createFromParcel(legacy).getContactNumber();
+            }
+            long legacyReadNs = SystemClock.elapsedRealtimeNanos() - start;
+
+            Parcel compact = Parcel.obtain();
+            start = SystemClock.elapsedRealtimeNanos();
+            for (RcsPresenceInfo info : infos) {
+                info.writeToParcel(compact, 0);
+            }
+            long compactWriteNs = SystemClock.elapsedRealtimeNanos() - start;
+
+            compact.setDataPosition(0);
+            start = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < count; i++) {
+                RcsPresenceInfo.CREATOR.createFromParcel(compact).getContactNumber();
+            }
+            long compactReadNs = SystemClock.elapsedRealtimeNanos() - start;
+
+            Log.i(TAG, "count=" + count +
+                    " legacy size=" + legacy.dataSize() + " write=" + legacyWriteNs +
+                    "ns read=" + legacyReadNs + "ns" +
+                    " compact size=" + compact.dataSize() + " write=" + compactWriteNs +
+                    "ns read=" + compactReadNs + "ns");
+            assertTrue(compact.dataSize() < legacy.dataSize());
+
+            legacy.recycle();
+            compact.recycle();
+        }
+    }
+}
@@ -31,7 +31,6 @@ package com.android.ims;
 import android.os.Bundle;
 import android.os.Parcel;
 import android.os.Parcelable;
-import android.net.Uri;
 
 import com.android.ims.internal.Logger;
 
@@ -174,14 +173,14 @@ public class RcsPresenceInfo implements Parcelable {
      * @see #CONTACT_NUMBER
      */
     public String getContactNumber() {
-        return mServiceInfo.getString(CONTACT_NUMBER);
+        return mContactNumber;
     }
 
     /**
      * @Return the VolteStatus.
      */
     public int getVolteStatus(){
-        return mServiceInfo.getInt(VOLTE_STATUS);
+        return mVolteStatus;
     }
 
     /**
@@ -196,7 +195,8 @@ public class RcsPresenceInfo implements Parcelable {
      * @see ServiceInfoKey#STATE
      */
     public int getServiceState(int serviceType) {
-        return getServiceInfo(serviceType, ServiceInfoKey.STATE, ServiceState.UNKNOWN);
+        ServiceInfo serviceInfo = getServiceInfo(serviceType);
+        return serviceInfo != null ? serviceInfo.mState : ServiceState.UNKNOWN;
     }
 
     /**
@@ -210,7 +210,8 @@ public class RcsPresenceInfo implements Parcelable {
      * @see ServiceInfoKey#SERVICE_CONTACT
      */
     public String getServiceContact(int serviceType) {
-        return getServiceInfo(serviceType, ServiceInfoKey.SERVICE_CONTACT, "");
+        ServiceInfo serviceInfo = getServiceInfo(serviceType);
+        return serviceInfo != null ? serviceInfo.mServiceContact : "";
     }
 
     /**
@@ -224,7 +225,8 @@ public class RcsPresenceInfo implements Parcelable {
      * @see ServiceInfoKey#TIMESTAMP
      */
     public long getTimeStamp(int serviceType) {
-        return getServiceInfo(serviceType, ServiceInfoKey.TIMESTAMP, 0L);
+        ServiceInfo serviceInfo = getServiceInfo(serviceType);
+        return serviceInfo != null ? serviceInfo.mTimestamp : 0L;
     }
 
     /**
@@ -237,14 +239,52 @@ public class RcsPresenceInfo implements Parcelable {
      * @hide
      */
     public RcsPresenceInfo(Parcel source) {
-        mServiceInfo.readFromParcel(source);
+        int start = source.dataPosition();
+        if (source.readInt() != PARCEL_MAGIC) {
+            // Written as a Bundle by the earlier versions.
+            source.setDataPosition(start);
+            Bundle bundle = new Bundle();
+            bundle.readFromParcel(source);
+            readFromBundle(bundle);
+            return;
+        }
+
+        source.readInt(); // version
+        int size = source.readInt();
+        int dataStart = source.dataPosition();
+
+        mContactNumber = source.readString();
+        mVolteStatus = source.readInt();
+        int serviceMask = source.readInt();
+        if ((serviceMask & (1 << ServiceType.VOLTE_CALL)) != 0) {
+            mVolteCallInfo = new ServiceInfo(source.readInt(), source.readString(),
+                    source.readLong());
+        }
+        if ((serviceMask & (1 << ServiceType.VT_CALL)) != 0) {
+            mVtCallInfo = new ServiceInfo(source.readInt(), source.readString(),
+                    source.readLong());
+        }
+
+        // Skip the fields added by the later versions.
+        source.setDataPosition(dataStart + size);
     }
 
-    /**
-     * @hide
-     */
-    private Bundle getBundle() {
-        return mServiceInfo;
+    private void readFromBundle(Bundle bundle) {
+        mContactNumber = bundle.getString(CONTACT_NUMBER);
+        mVolteStatus = bundle.getInt(VOLTE_STATUS);
+        mVolteCallInfo = readFromBundle(bundle, ServiceType.VOLTE_CALL);
+        mVtCallInfo = readFromBundle(bundle, ServiceType.VT_CALL);
+    }
+
+    private static ServiceInfo readFromBundle(Bundle bundle, int serviceType) {
+        Bundle capability = bundle.getBundle(String.valueOf(serviceType));
+        if (capability == null) {
+            return null;
+        }
+
+        return new ServiceInfo(capability.getInt(ServiceInfoKey.STATE),
+                capability.getString(ServiceInfoKey.SERVICE_CONTACT),
+                capability.getLong(ServiceInfoKey.TIMESTAMP));
     }
 
     /**
@@ -253,27 +293,16 @@ public class RcsPresenceInfo implements Parcelable {
     public RcsPresenceInfo(String contactNumber,int volteStatus,
             int ipVoiceCallState, String ipVoiceCallServiceNumber, long ipVoiceCallTimestamp,
             int ipVideoCallState, String ipVideoCallServiceNumber, long ipVideoCallTimestamp) {
-        mServiceInfo.putString(CONTACT_NUMBER, contactNumber);
-        mServiceInfo.putInt(VOLTE_STATUS, volteStatus);
+        mContactNumber = contactNumber;
+        mVolteStatus = volteStatus;
 
-        set(ServiceType.VOLTE_CALL, ipVoiceCallState, ipVoiceCallServiceNumber,
+        mVolteCallInfo = new ServiceInfo(ipVoiceCallState, ipVoiceCallServiceNumber,
                 ipVoiceCallTimestamp);
 
-        set(ServiceType.VT_CALL, ipVideoCallState, ipVideoCallServiceNumber,
+        mVtCallInfo = new ServiceInfo(ipVideoCallState, ipVideoCallServiceNumber,
                 ipVideoCallTimestamp);
     }
 
-    private void set(int serviceType, int state, String serviceNumber, long timestamp) {
-        Bundle capability = new Bundle();
-
-        capability.putInt(ServiceInfoKey.SERVICE_TYPE, serviceType);
-        capability.putInt(ServiceInfoKey.STATE, state);
-        capability.putString(ServiceInfoKey.SERVICE_CONTACT, serviceNumber);
-        capability.putLong(ServiceInfoKey.TIMESTAMP, timestamp);
-
-        mServiceInfo.putBundle(String.valueOf(serviceType), capability);
-    }
-
     /**
      * Overload
      * @hide
@@ -294,7 +323,29 @@ public class RcsPresenceInfo implements Parcelable {
      * @hide
      */
     public void writeToParcel(Parcel dest, int flags) {
-        mServiceInfo.writeToParcel(dest, flags);
+        dest.writeInt(PARCEL_MAGIC);
+        dest.writeInt(PARCEL_VERSION);
+        int sizePosition = dest.dataPosition();
+        dest.writeInt(0);
+        int dataStart = dest.dataPosition();
+
+        dest.writeString(mContactNumber);
+        dest.writeInt(mVolteStatus);
+        int serviceMask = (mVolteCallInfo != null ? 1 << ServiceType.VOLTE_CALL : 0) |
+                (mVtCallInfo != null ? 1 << ServiceType.VT_CALL : 0);
+        dest.writeInt(serviceMask);
+        if (mVolteCallInfo != null) {
+            mVolteCallInfo.writeToParcel(dest);
+        }
+        if (mVtCallInfo != null) {
+            mVtCallInfo.writeToParcel(dest);
+        }
+
+        // The size lets the earlier versions skip the fields they don't know.
+        int dataEnd = dest.dataPosition();
+        dest.setDataPosition(sizePosition);
+        dest.writeInt(dataEnd - dataStart);
+        dest.setDataPosition(dataEnd);
     }
 
     /**
@@ -305,41 +356,47 @@ public class RcsPresenceInfo implements Parcelable {
         return 0;
     }
 
-    private Bundle mServiceInfo = new Bundle();
-
-    private String getServiceInfo(int serviceType, String infoKey, String defaultValue) {
-        Bundle serviceInfo = mServiceInfo.getBundle(String.valueOf(serviceType));
-
-        if (serviceInfo != null) {
-            return serviceInfo.getString(infoKey);
-        }
-        return defaultValue;
-    }
-
-    private long getServiceInfo(int serviceType, String infoKey, long defaultValue) {
-        Bundle serviceInfo = mServiceInfo.getBundle(String.valueOf(serviceType));
-        if (serviceInfo != null) {
-            return serviceInfo.getLong(infoKey);
+    /*
+     * The parcel starts with it, the earlier versions wrote a Bundle instead. It is negative so
+     * it can't be the length of a Bundle.
+     */
+    private static final int PARCEL_MAGIC = 0xC0DE5250;
+    private static final int PARCEL_VERSION = 1;
+
+    private static final class ServiceInfo {
+        final int mState;
+        final String mServiceContact;
+        final long mTimestamp;
+
+        ServiceInfo(int state, String serviceContact, long timestamp) {
+            mState = state;
+            mServiceContact = serviceContact;
+            mTimestamp = timestamp;
         }
 
-        return defaultValue;
-    }
-
-    private int getServiceInfo(int serviceType, String infoType, int defaultValue) {
-        Bundle serviceInfo = mServiceInfo.getBundle(String.valueOf(serviceType));
-        if (serviceInfo != null) {
-            return serviceInfo.getInt(infoType);
+        void writeToParcel(Parcel dest) {
+            dest.writeInt(mState);
+            dest.writeString(mServiceContact);
+            dest.writeLong(mTimestamp);
         }
-        return defaultValue;
     }
 
-    private Uri getServiceInfo(int serviceType, String infoKey, Uri defaultValue) {
-        Bundle serviceInfo = mServiceInfo.getBundle(String.valueOf(serviceType));
-        if (serviceInfo != null) {
-            return (Uri)serviceInfo.getParcelable(infoKey);
+    private String mContactNumber;
+    private int mVolteStatus;
+
+    // null if the presence of the service is not known.
+    private ServiceInfo mVolteCallInfo;
+    private ServiceInfo mVtCallInfo;
+
+    private ServiceInfo getServiceInfo(int serviceType) {
+        switch (serviceType) {
+            case ServiceType.VOLTE_CALL:
+                return mVolteCallInfo;
+            case ServiceType.VT_CALL:
+                return mVtCallInfo;
+            default:
+                return null;
         }
-
-        return defaultValue;
     }
 
     public String toString() {
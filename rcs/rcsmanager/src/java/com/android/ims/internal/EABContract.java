@@ -233,6 +233,22 @@ public final class EABContract {
          */
         public static final String FORMATTED_NUMBER = "formatted_number";
 
+        /**
+         * Key defining the formatted number in the form which the presence results use.
+         * <p>
+         * Type: TEXT
+         * </p>
+         */
+        public static final String CANONICAL_NUMBER = "canonical_number";
+
+        /**
+         * Key defining the reversed last digits of the number, for the indexed lookup.
+         * <p>
+         * Type: TEXT
+         * </p>
+         */
+        public static final String MIN_MATCH = "min_match";
+
         /**
          * @hide
          */
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.service.ims;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.IBinder;
+import android.os.RemoteException;
+
+import java.util.ArrayList;
+
+import com.android.ims.RcsPresence;
+import com.android.ims.RcsPresenceInfo;
+import com.android.ims.internal.IPresencePersist;
+import com.android.ims.internal.Logger;
+
+/**
+ * Keeps a connection to PersistService and passes the presence results and the publish state
+ * through it. The Intent of ACTION_PRESENCE_CHANGED or ACTION_PUBLISH_STATE_CHANGED is used
+ * while the service is not bound. The long lists are sent in chunks of MAX_CHUNK_SIZE.
+ */
+public class PersistServiceConnection {
+    /*
+     * The logger
+     */
+    private Logger logger = Logger.getLogger(this.getClass().getName());
+
+    private static final String PERSIST_SERVICE_NAME =
+            "com.android.service.ims.presence.PersistService";
+    private static final String PERSIST_SERVICE_PACKAGE = "com.android.service.ims.presence";
+
+    // Keeps a transaction well below the binder buffer.
+    private static final int MAX_CHUNK_SIZE = 50;
+
+    private static PersistServiceConnection sInstance = null;
+
+    private final Context mContext;
+
+    private volatile IPresencePersist mService = null;
+    private boolean mBound = false;
+
+    private final ServiceConnection mConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            logger.print("onServiceConnected name=" + name);
+            mService = IPresencePersist.Stub.asInterface(service);
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            // It will be connected again once PersistService is restarted.
+            logger.print("onServiceDisconnected name=" + name);
+            mService = null;
+        }
+
+        @Override
+        public void onBindingDied(ComponentName name) {
+            logger.print("onBindingDied name=" + name);
+            unbind();
+            bind();
+        }
+    };
+
+    private PersistServiceConnection(Context context) {
+        mContext = context;
+    }
+
+    public static synchronized PersistServiceConnection getInstance(Context context) {
+        if ((sInstance == null) && (context != null)) {
+            sInstance = new PersistServiceConnection(context);
+        }
+
+        return sInstance;
+    }
+
+    private static ComponentName getComponent() {
+        return new ComponentName(PERSIST_SERVICE_PACKAGE, PERSIST_SERVICE_NAME);
+    }
+
+    public synchronized void bind() {
+        if (mBound) {
+            return;
+        }
+
+        Intent intent = new Intent();
+        intent.setComponent(getComponent());
+        mBound = mContext.bindService(intent, mConnection, Context.BIND_AUTO_CREATE);
+        logger.print("bind mBound=" + mBound);
+    }
+
+    public synchronized void unbind() {
+        if (!mBound) {
+            return;
+        }
+
+        mContext.unbindService(mConnection);
+        mBound = false;
+        mService = null;
+    }
+
+    public void sendPresenceInfos(ArrayList<RcsPresenceInfo> presenceInfoList,
+            boolean updateLastTimestamp) {
+        for (int i = 0; i < presenceInfoList.size(); i += MAX_CHUNK_SIZE) {
+            ArrayList<RcsPresenceInfo> chunk = presenceInfoList.size() <= MAX_CHUNK_SIZE ?
+                    presenceInfoList : new ArrayList<RcsPresenceInfo>(presenceInfoList.subList(
+                    i, Math.min(presenceInfoList.size(), i + MAX_CHUNK_SIZE)));
+
+            IPresencePersist service = mService;
+            if (service != null) {
+                try {
+                    service.onPresenceBatch(chunk, updateLastTimestamp);
+                    continue;
+                } catch (RemoteException e) {
+                    logger.error("onPresenceBatch failed, use the Intent", e);
+                }
+            }
+
+            Intent intent = new Intent(RcsPresence.ACTION_PRESENCE_CHANGED);
+            intent.putParcelableArrayListExtra(RcsPresence.EXTRA_PRESENCE_INFO_LIST, chunk);
+            intent.putExtra("updateLastTimestamp", updateLastTimestamp);
+            launchPersistService(intent);
+        }
+    }
+
+    public void sendPublishState(int publishState) {
+        IPresencePersist service = mService;
+        if (service != null) {
+            try {
+                service.onPublishState(publishState);
+                return;
+            } catch (RemoteException e) {
+                logger.error("onPublishState failed, use the Intent", e);
+            }
+        }
+
+        Intent intent = new Intent(RcsPresence.ACTION_PUBLISH_STATE_CHANGED);
+        intent.putExtra(RcsPresence.EXTRA_PUBLISH_STATE, publishState);
+        launchPersistService(intent);
+    }
+
+    private void launchPersistService(Intent intent) {
+        intent.setComponent(getComponent());
+        mContext.startService(intent);
+    }
+}
@@ -28,6 +28,8 @@
 
 package com.android.service.ims;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.List;
 
 import android.content.Intent;
@@ -42,6 +44,7 @@ import android.database.ContentObserver;
 import android.content.BroadcastReceiver;
 import android.provider.Settings;
 import android.net.ConnectivityManager;
+import com.android.ims.ImsConfig;
 import com.android.ims.ImsManager;
 import com.android.ims.ImsConnectionStateListener;
 import com.android.ims.ImsException;
@@ -78,6 +81,8 @@ public class RcsService extends Service{
 
         logger.debug("RcsService onCreate");
 
+        TelephonyStateCache.getInstance(this);
+        PersistServiceConnection.getInstance(this).bind();
         mRcsStackAdaptor = RcsStackAdaptor.getInstance(this);
 
         mPublication = new PresencePublication(mRcsStackAdaptor, this);
@@ -114,14 +119,22 @@ public class RcsService extends Service{
                 logger.print("onReceive intent=" + intent);
                 if(ImsManager.ACTION_IMS_SERVICE_UP.equalsIgnoreCase(
                         intent.getAction())){
+                    RcsSettingUtils.invalidateProvisionedValues();
                     handleImsServiceUp();
                 } else if(ImsManager.ACTION_IMS_SERVICE_DOWN.equalsIgnoreCase(
                         intent.getAction())){
+                    RcsSettingUtils.invalidateProvisionedValues();
                     handleImsServiceDown();
+                } else if(ImsConfig.ACTION_IMS_CONFIG_CHANGED.equalsIgnoreCase(
+                        intent.getAction()) ||
+                        ImsConfig.ACTION_IMS_FEATURE_CHANGED.equalsIgnoreCase(
+                        intent.getAction())) {
+                    RcsSettingUtils.invalidateProvisionedValues();
                 } else if(TelephonyIntents.ACTION_SIM_STATE_CHANGED.equalsIgnoreCase(
                         intent.getAction())) {
                     String stateExtra = intent.getStringExtra(
                             IccCardConstants.INTENT_KEY_ICC_STATE);
+                    RcsSettingUtils.invalidateProvisionedValues();
                     handleSimStateChanged(stateExtra);
                 }
             }
@@ -131,9 +144,19 @@ public class RcsService extends Service{
         statusFilter.addAction(ImsManager.ACTION_IMS_SERVICE_UP);
         statusFilter.addAction(ImsManager.ACTION_IMS_SERVICE_DOWN);
         statusFilter.addAction(TelephonyIntents.ACTION_SIM_STATE_CHANGED);
+        statusFilter.addAction(ImsConfig.ACTION_IMS_CONFIG_CHANGED);
+        statusFilter.addAction(ImsConfig.ACTION_IMS_FEATURE_CHANGED);
         registerReceiver(mReceiver, statusFilter);
     }
 
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        pw.println("RcsService:");
+        if(mSubscriber != null){
+            mSubscriber.dump(pw);
+        }
+    }
+
     public void handleImsServiceUp() {
         if(mPublication != null) {
             mPublication.handleImsServiceUp();
@@ -180,6 +203,8 @@ public class RcsService extends Service{
         mPublication.finish();
         mPublication = null;
         mSubscriber = null;
+        TelephonyStateCache.getInstance(this).finish();
+        PersistServiceConnection.getInstance(this).unbind();
 
         logger.debug("RcsService onDestroy");
         super.onDestroy();
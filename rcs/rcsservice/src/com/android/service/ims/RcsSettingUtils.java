@@ -38,10 +38,12 @@ import com.android.ims.ImsConfig;
 import com.android.ims.ImsManager;
 import com.android.ims.ImsException;
 import android.os.SystemProperties;
+import android.util.SparseIntArray;
 
 import com.android.ims.RcsManager.ResultCode;
 
 import com.android.ims.internal.Logger;
+import com.android.internal.annotations.VisibleForTesting;
 
 public class RcsSettingUtils{
     /*
@@ -52,6 +54,114 @@ public class RcsSettingUtils{
     public RcsSettingUtils() {
     }
 
+    // The items which are read in the request paths.
+    private static final int[] CACHED_ITEMS = {
+        ImsConfig.ConfigConstants.EAB_SETTING_ENABLED,
+        ImsConfig.ConfigConstants.LVC_SETTING_ENABLED,
+        ImsConfig.ConfigConstants.VOICE_OVER_WIFI_SETTING_ENABLED,
+        ImsConfig.ConfigConstants.SIP_T1_TIMER,
+        ImsConfig.ConfigConstants.CAPABILITY_DISCOVERY_ENABLED,
+        ImsConfig.ConfigConstants.MAX_NUMENTRIES_IN_RCL,
+        ImsConfig.ConfigConstants.CAPAB_POLL_LIST_SUB_EXP,
+        ImsConfig.ConfigConstants.AVAILABILITY_CACHE_EXPIRATION,
+        ImsConfig.ConfigConstants.MOBILE_DATA_ENABLED,
+        ImsConfig.ConfigConstants.SOURCE_THROTTLE_PUBLISH
+    };
+
+    // The provisioned values read from ImsConfig, keyed by the ConfigConstants item.
+    private static final SparseIntArray sProvisionedValues = new SparseIntArray();
+    private static boolean sProvisionedValuesLoaded = false;
+
+    // Used instead of the ImsConfig of ImsManager if it is set.
+    private static ImsConfig sTestConfigInterface = null;
+
+    @VisibleForTesting
+    public static void setConfigInterface(ImsConfig imsConfig) {
+        synchronized (sProvisionedValues) {
+            sTestConfigInterface = imsConfig;
+        }
+        invalidateProvisionedValues();
+    }
+
+    /**
+     * Drops the cached provisioned values, e.g. for the provisioning changes or the IMS service
+     * restart. They are read from ImsConfig again by the next getter.
+     */
+    public static void invalidateProvisionedValues() {
+        synchronized (sProvisionedValues) {
+            logger.debug("invalidateProvisionedValues");
+            sProvisionedValues.clear();
+            sProvisionedValuesLoaded = false;
+        }
+    }
+
+    private static void invalidateProvisionedValue(int item) {
+        synchronized (sProvisionedValues) {
+            sProvisionedValues.delete(item);
+        }
+    }
+
+    private static ImsConfig getConfigInterface(Context context) {
+        if (sTestConfigInterface != null) {
+            return sTestConfigInterface;
+        }
+
+        ImsManager imsManager = ImsManager.getInstance(context, 0);
+        if (imsManager == null) {
+            return null;
+        }
+
+        try {
+            return imsManager.getConfigInterface();
+        } catch (ImsException ex) {
+            return null;
+        }
+    }
+
+    // Reads the item from ImsConfig, returns false if it can't be read.
+    private static boolean readProvisionedValue(ImsConfig imsConfig, int item) {
+        try {
+            sProvisionedValues.put(item, imsConfig.getProvisionedValue(item));
+            return true;
+        } catch (ImsException ex) {
+            logger.debug("Failed to read item=" + item, ex);
+            return false;
+        }
+    }
+
+    /**
+     * Serves the provisioned value from the cache. All the CACHED_ITEMS are read at the first
+     * call after the invalidation, the other items when they are asked for.
+     */
+    private static int getProvisionedValue(Context context, int item, int defaultValue) {
+        synchronized (sProvisionedValues) {
+            int index = sProvisionedValues.indexOfKey(item);
+            if (index >= 0) {
+                return sProvisionedValues.valueAt(index);
+            }
+
+            ImsConfig imsConfig = getConfigInterface(context);
+            if (imsConfig == null) {
+                // Don't cache it, the IMS service may not be up yet.
+                return defaultValue;
+            }
+
+            if (!sProvisionedValuesLoaded) {
+                for (int cachedItem : CACHED_ITEMS) {
+                    readProvisionedValue(imsConfig, cachedItem);
+                }
+                sProvisionedValuesLoaded = true;
+            }
+
+            index = sProvisionedValues.indexOfKey(item);
+            if (index < 0 && !readProvisionedValue(imsConfig, item)) {
+                return defaultValue;
+            }
+
+            return sProvisionedValues.get(item);
+        }
+    }
+
     public static boolean isFeatureProvisioned(Context context,
             int featureId, boolean defaultValue) {
         CarrierConfigManager configManager = (CarrierConfigManager)
@@ -65,18 +175,9 @@ public class RcsSettingUtils{
             }
         }
 
-        boolean provisioned = defaultValue;
-        ImsManager imsManager = ImsManager.getInstance(context, 0);
-        if (imsManager != null) {
-            try {
-                ImsConfig imsConfig = imsManager.getConfigInterface();
-                if (imsConfig != null) {
-                    provisioned = imsConfig.getProvisionedValue(featureId)
-                            == ImsConfig.FeatureValueConstants.ON;
-                }
-            } catch (ImsException ex) {
-            }
-        }
+        boolean provisioned = getProvisionedValue(context, featureId,
+                defaultValue ? ImsConfig.FeatureValueConstants.ON :
+                ImsConfig.FeatureValueConstants.OFF) == ImsConfig.FeatureValueConstants.ON;
 
         logger.debug("featureId=" + featureId + " provisioned=" + provisioned);
         return provisioned;
@@ -98,19 +199,8 @@ public class RcsSettingUtils{
     }
 
     public static int getSIPT1Timer(Context context) {
-        int sipT1Timer = 0;
-
-        ImsManager imsManager = ImsManager.getInstance(context, 0);
-        if (imsManager != null) {
-            try {
-                ImsConfig imsConfig = imsManager.getConfigInterface();
-                if (imsConfig != null) {
-                    sipT1Timer = imsConfig.getProvisionedValue(
-                            ImsConfig.ConfigConstants.SIP_T1_TIMER);
-                }
-            } catch (ImsException ex) {
-            }
-        }
+        int sipT1Timer = getProvisionedValue(context,
+                ImsConfig.ConfigConstants.SIP_T1_TIMER, 0);
 
         logger.debug("sipT1Timer=" + sipT1Timer);
         return sipT1Timer;
@@ -120,20 +210,9 @@ public class RcsSettingUtils{
      * Capability discovery status of Enabled (1), or Disabled (0).
      */
     public static boolean getCapabilityDiscoveryEnabled(Context context) {
-        boolean capabilityDiscoveryEnabled = false;
-
-        ImsManager imsManager = ImsManager.getInstance(context, 0);
-        if (imsManager != null) {
-            try {
-                ImsConfig imsConfig = imsManager.getConfigInterface();
-                if (imsConfig != null) {
-                    capabilityDiscoveryEnabled = imsConfig.getProvisionedValue(
-                            ImsConfig.ConfigConstants.CAPABILITY_DISCOVERY_ENABLED)
-                            == ImsConfig.FeatureValueConstants.ON;
-                }
-            } catch (ImsException ex) {
-            }
-        }
+        boolean capabilityDiscoveryEnabled = getProvisionedValue(context,
+                ImsConfig.ConfigConstants.CAPABILITY_DISCOVERY_ENABLED,
+                ImsConfig.FeatureValueConstants.OFF) == ImsConfig.FeatureValueConstants.ON;
 
         logger.debug("capabilityDiscoveryEnabled=" + capabilityDiscoveryEnabled);
         return capabilityDiscoveryEnabled;
@@ -143,19 +222,8 @@ public class RcsSettingUtils{
      * The Maximum number of MDNs contained in one Request Contained List.
      */
     public static int getMaxNumbersInRCL(Context context) {
-        int maxNumbersInRCL = 100;
-
-        ImsManager imsManager = ImsManager.getInstance(context, 0);
-        if (imsManager != null) {
-            try {
-                ImsConfig imsConfig = imsManager.getConfigInterface();
-                if (imsConfig != null) {
-                    maxNumbersInRCL = imsConfig.getProvisionedValue(
-                            ImsConfig.ConfigConstants.MAX_NUMENTRIES_IN_RCL);
-                }
-            } catch (ImsException ex) {
-            }
-        }
+        int maxNumbersInRCL = getProvisionedValue(context,
+                ImsConfig.ConfigConstants.MAX_NUMENTRIES_IN_RCL, 100);
 
         logger.debug("maxNumbersInRCL=" + maxNumbersInRCL);
         return maxNumbersInRCL;
@@ -165,19 +233,8 @@ public class RcsSettingUtils{
      * Expiration timer for subscription of a Request Contained List, used in capability polling.
      */
     public static int getCapabPollListSubExp(Context context) {
-        int capabPollListSubExp = 30;
-
-        ImsManager imsManager = ImsManager.getInstance(context, 0);
-        if (imsManager != null) {
-            try {
-                ImsConfig imsConfig = imsManager.getConfigInterface();
-                if (imsConfig != null) {
-                    capabPollListSubExp = imsConfig.getProvisionedValue(
-                            ImsConfig.ConfigConstants.CAPAB_POLL_LIST_SUB_EXP);
-                }
-            } catch (ImsException ex) {
-            }
-        }
+        int capabPollListSubExp = getProvisionedValue(context,
+                ImsConfig.ConfigConstants.CAPAB_POLL_LIST_SUB_EXP, 30);
 
         logger.debug("capabPollListSubExp=" + capabPollListSubExp);
         return capabPollListSubExp;
@@ -187,38 +244,17 @@ public class RcsSettingUtils{
      * Peiod of time the availability information of a contact is cached on device.
      */
     public static int getAvailabilityCacheExpiration(Context context) {
-        int availabilityCacheExpiration = 30;
-
-        ImsManager imsManager = ImsManager.getInstance(context, 0);
-        if (imsManager != null) {
-            try {
-                ImsConfig imsConfig = imsManager.getConfigInterface();
-                if (imsConfig != null) {
-                    availabilityCacheExpiration = imsConfig.getProvisionedValue(
-                            ImsConfig.ConfigConstants.AVAILABILITY_CACHE_EXPIRATION);
-                }
-            } catch (ImsException ex) {
-            }
-        }
+        int availabilityCacheExpiration = getProvisionedValue(context,
+                ImsConfig.ConfigConstants.AVAILABILITY_CACHE_EXPIRATION, 30);
 
         logger.debug("availabilityCacheExpiration=" + availabilityCacheExpiration);
         return availabilityCacheExpiration;
     }
 
     public static boolean isMobileDataEnabled(Context context) {
-        boolean mobileDataEnabled = false;
-        ImsManager imsManager = ImsManager.getInstance(context, 0);
-        if (imsManager != null) {
-            try {
-                ImsConfig imsConfig = imsManager.getConfigInterface();
-                if (imsConfig != null) {
-                    mobileDataEnabled = imsConfig.getProvisionedValue(
-                            ImsConfig.ConfigConstants.MOBILE_DATA_ENABLED)
-                            == ImsConfig.FeatureValueConstants.ON;
-                }
-            } catch (ImsException ex) {
-            }
-        }
+        boolean mobileDataEnabled = getProvisionedValue(context,
+                ImsConfig.ConfigConstants.MOBILE_DATA_ENABLED,
+                ImsConfig.FeatureValueConstants.OFF) == ImsConfig.FeatureValueConstants.ON;
 
         logger.debug("mobileDataEnabled=" + mobileDataEnabled);
         return mobileDataEnabled;
@@ -234,6 +270,8 @@ public class RcsSettingUtils{
                     imsConfig.setProvisionedValue(
                             ImsConfig.ConfigConstants.MOBILE_DATA_ENABLED, mobileDataEnabled?
                             ImsConfig.FeatureValueConstants.ON:ImsConfig.FeatureValueConstants.OFF);
+                    // Read it again from ImsConfig next time.
+                    invalidateProvisionedValue(ImsConfig.ConfigConstants.MOBILE_DATA_ENABLED);
                 }
             } catch (ImsException ex) {
                 logger.debug("ImsException", ex);
@@ -242,19 +280,8 @@ public class RcsSettingUtils{
     }
 
     public static int getPublishThrottle(Context context) {
-        int publishThrottle = 60000;
-
-        ImsManager imsManager = ImsManager.getInstance(context, 0);
-        if (imsManager != null) {
-            try {
-                ImsConfig imsConfig = imsManager.getConfigInterface();
-                if (imsConfig != null) {
-                    publishThrottle = imsConfig.getProvisionedValue(
-                            ImsConfig.ConfigConstants.SOURCE_THROTTLE_PUBLISH);
-                }
-            } catch (ImsException ex) {
-            }
-        }
+        int publishThrottle = getProvisionedValue(context,
+                ImsConfig.ConfigConstants.SOURCE_THROTTLE_PUBLISH, 60000);
 
         logger.debug("publishThrottle=" + publishThrottle);
         return publishThrottle;
@@ -33,7 +33,6 @@ import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import android.content.BroadcastReceiver;
-import android.content.ComponentName;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.content.pm.ServiceInfo;
@@ -85,10 +84,6 @@ import com.android.service.ims.presence.AlarmBroadcastReceiver;
 public class RcsStackAdaptor{
     private static final boolean DEBUG = true;
 
-    private static final String PERSIST_SERVICE_NAME =
-            "com.android.service.ims.presence.PersistService";
-    private static final String PERSIST_SERVICE_PACKAGE = "com.android.service.ims.presence";
-
     // The logger
     private Logger logger = Logger.getLogger(this.getClass().getName());
 
@@ -247,7 +242,7 @@ public class RcsStackAdaptor{
                 // Start PersistService and broadcast to other receivers that are listening
                 // dynamically.
                 mContext.sendStickyBroadcast(publishIntent);
-                launchPersistService(publishIntent);
+                PersistServiceConnection.getInstance(mContext).sendPublishState(publishState);
             }
 
             mPublishingState = publishState;
@@ -354,18 +349,14 @@ public class RcsStackAdaptor{
              return ret;
          }
 
-        TelephonyManager teleMgr = (TelephonyManager) mContext.getSystemService(
-            Context.TELEPHONY_SERVICE);
-        if(teleMgr == null){
-            logger.error("teleMgr = null");
-            return PresencePublication.PUBLISH_GENIRIC_FAILURE;
-        }
+        TelephonyStateCache.Snapshot snapshot =
+                TelephonyStateCache.getInstance(mContext).getSnapshot();
 
         String myNumUri = null;
-        String myDomain = teleMgr.getIsimDomain();
+        String myDomain = snapshot.getIsimDomain();
         logger.debug("myDomain=" + myDomain);
         if(myDomain != null && myDomain.length() !=0){
-            String[] impu = teleMgr.getIsimImpu();
+            String[] impu = snapshot.getIsimImpu();
 
             if(impu !=null){
                 for(int i=0; i<impu.length; i++){
@@ -382,7 +373,7 @@ public class RcsStackAdaptor{
         String myNumber = PresenceInfoParser.getPhoneFromUri(myNumUri);
 
         if(myNumber == null){
-            myNumber = ContactNumberUtils.getDefault().format(teleMgr.getLine1Number());
+            myNumber = ContactNumberUtils.getDefault().format(snapshot.getLine1Number());
             if(myDomain != null && myDomain.length() !=0){
                 myNumUri = "sip:" + myNumber + "@" + myDomain;
             }else{
@@ -448,13 +439,6 @@ public class RcsStackAdaptor{
         return  ResultCode.SUCCESS;
     }
 
-    private void launchPersistService(Intent intent) {
-        ComponentName component = new ComponentName(PERSIST_SERVICE_PACKAGE,
-                PERSIST_SERVICE_NAME);
-        intent.setComponent(component);
-        mContext.startService(intent);
-    }
-
     private void createListeningThread() {
         HandlerThread listenerThread = new HandlerThread("Listener",
                 android.os.Process.THREAD_PRIORITY_BACKGROUND);
@@ -30,21 +30,24 @@ package com.android.service.ims;
 
 import java.util.Set;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 import android.os.RemoteException;
 import android.content.Context;
 import android.os.Handler;
 import android.os.Message;
 import android.os.HandlerThread;
 import android.os.Looper;
-import android.telephony.PhoneNumberUtils;
 
 import com.android.ims.internal.uce.presence.PresCmdStatus;
 
 import com.android.ims.internal.Logger;
+import com.android.ims.internal.ContactNumberUtils;
 import com.android.ims.RcsManager.ResultCode;
 import com.android.ims.RcsPresenceInfo;
 import com.android.ims.IRcsPresenceListener;
@@ -62,26 +65,56 @@ public class TaskManager{
      */
     private Logger logger = Logger.getLogger(this.getClass().getName());
 
-    private static TaskManager sTaskManager = null;
+    private static final TaskManager sTaskManager = new TaskManager();
 
-    private int mTaskId = 0;
+    private final AtomicInteger mTaskId = new AtomicInteger(0);
 
     public final static int TASK_TYPE_GET_CAPABILITY   = 1;
     public final static int TASK_TYPE_GET_AVAILABILITY = 2;
     public final static int TASK_TYPE_PUBLISH          = 3;
 
-    private Map<String, Task> mTaskMap;
+    // Keyed by task id. The tables and the indexes can be read without locking. The writers
+    // are serialized by mSyncObj so the indexes stay consistent with the task table.
+    private final TaskTable mTaskMap;
+
+    // Index of the tasks which had got the SIP request id from IQPresListener_CMDStatus.
+    private final TaskTable mSipRequestIdMap;
+
+    // Index of the single contact capability tasks and the availability tasks by the contact
+    // number which had been formatted by ContactNumberUtils.
+    private final ConcurrentHashMap<String, List<PresenceTask>> mContactTaskMap;
+
+    // The availability tasks ordered by the time their cache window starts from, which is the
+    // notify time or the create time. A task is queued again when it gets the notify, so the
+    // entries which don't match the task any more are skipped when they are polled.
+    private final PriorityQueue<AvailabilityExpiry> mAvailabilityExpiryQueue;
+
+    // The cache window of the availability tasks in ms, 0 before any request set it.
+    private volatile long mAvailabilityExpire = 0;
 
     private final Object mSyncObj = new Object();
 
     private static final int TASK_MANAGER_ON_TERMINATED = 1;
     private static final int TASK_MANAGER_ON_TIMEOUT = 2;
+    private static final int TASK_MANAGER_CLEAR_TIMEOUT_AVAILABILITY = 3;
 
     private static MessageHandler sMsgHandler;
 
-    public TaskManager(){
+    // The timeouts of the capability tasks share one alarm through it.
+    private TaskTimeoutWheel mTimeoutWheel;
+
+    private TaskManager(){
         logger.debug("TaskManager created.");
-        mTaskMap = new HashMap<String, Task>();
+        mTaskMap = new TaskTable();
+        mSipRequestIdMap = new TaskTable() {
+            @Override
+            protected int getKey(Task task) {
+                return task.mSipRequestId;
+            }
+        };
+        mContactTaskMap = new ConcurrentHashMap<String, List<PresenceTask>>();
+        mAvailabilityExpiryQueue = new PriorityQueue<AvailabilityExpiry>(11,
+                (a, b) -> Long.compare(a.mStartTime, b.mStartTime));
 
         HandlerThread messageHandlerThread = new HandlerThread("MessageHandler",
                 android.os.Process.THREAD_PRIORITY_BACKGROUND);
@@ -89,18 +122,15 @@ public class TaskManager{
         messageHandlerThread.start();
         Looper messageHandlerLooper = messageHandlerThread.getLooper();
         sMsgHandler = new MessageHandler(messageHandlerLooper);
+        mTimeoutWheel = new TaskTimeoutWheel(sMsgHandler, taskId -> onTimeout(taskId));
     }
 
-    public static synchronized TaskManager getDefault(){
-        if(sTaskManager == null){
-            sTaskManager = new TaskManager();
-        }
-
+    public static TaskManager getDefault(){
         return sTaskManager;
     }
 
-    public synchronized int generateTaskId(){
-        return mTaskId++;
+    public int generateTaskId(){
+        return mTaskId.getAndIncrement();
     }
 
     public void putTask(int taskId, Task task){
@@ -109,8 +139,8 @@ public class TaskManager{
         }
     }
 
-    private synchronized void putTaskInternal(int taskId, Task task){
-        Task sameKeyTask = mTaskMap.put(String.valueOf(taskId), task);
+    private void putTaskInternal(int taskId, Task task){
+        Task sameKeyTask = mTaskMap.put(taskId, task);
 
         logger.debug("Added Task: " + task + "Original same key task:" + sameKeyTask);
     }
@@ -119,9 +149,14 @@ public class TaskManager{
             IRcsPresenceListener listener, long timeout){
         int taskId = TaskManager.getDefault().generateTaskId();
         synchronized (mSyncObj){
-            Task task = new PresenceCapabilityTask(context, taskId, TASK_TYPE_GET_CAPABILITY,
-                    listener, contacts, timeout);
+            PresenceCapabilityTask task = new PresenceCapabilityTask(context, taskId,
+                    TASK_TYPE_GET_CAPABILITY, listener, contacts, timeout);
             putTaskInternal(taskId, task);
+
+            // Only the single contact subscription is terminated by the contact's NOTIFY.
+            if(contacts != null && contacts.length == 1){
+                addContactIndexInternal(contacts[0], task);
+            }
         }
 
         return taskId;
@@ -132,11 +167,16 @@ public class TaskManager{
         synchronized (mSyncObj){
             String[] contacts = new String[1];
             contacts[0] = contact;
-            Task task = new PresenceAvailabilityTask(taskId, TASK_TYPE_GET_AVAILABILITY,
-                    listener, contacts);
+            PresenceAvailabilityTask task = new PresenceAvailabilityTask(taskId,
+                    TASK_TYPE_GET_AVAILABILITY, listener, contacts);
             putTaskInternal(taskId, task);
+            addContactIndexInternal(contact, task);
+            mAvailabilityExpiryQueue.offer(new AvailabilityExpiry(task,
+                    task.getCreateTimestamp()));
         }
 
+        scheduleClearTimeoutAvailabilityTask();
+
         return taskId;
     }
 
@@ -154,14 +194,14 @@ public class TaskManager{
 
     // If need to call getTask in this class please add another one getTaskInternal
     public Task getTask(int taskId){
-        synchronized (mSyncObj){
-            return mTaskMap.get(String.valueOf(taskId));
-        }
+        return mTaskMap.get(taskId);
     }
 
     public void removeTask(int taskId){
         synchronized (mSyncObj){
-            Task task = mTaskMap.remove(String.valueOf(taskId));
+            Task task = mTaskMap.remove(taskId);
+            removeIndexesInternal(task);
+
             if(task instanceof PresenceCapabilityTask){
                 ((PresenceCapabilityTask)task).cancelTimer();
             }
@@ -169,64 +209,119 @@ public class TaskManager{
         }
     }
 
-    public Task getTaskByRequestId(int sipRequestId){
-        synchronized (mSyncObj){
-            Set<String> keys= mTaskMap.keySet();
-            if(keys == null){
-                logger.debug("getTaskByRequestId keys=null");
-                return null;
-            }
+    private void removeIndexesInternal(Task task){
+        if(task == null){
+            return;
+        }
 
-            for(String key:keys){
-                if(mTaskMap.get(key).mSipRequestId == sipRequestId){
-                    logger.debug("getTaskByRequestId, sipRequestId=" + sipRequestId +
-                            " task=" + mTaskMap.get(key));
-                    return mTaskMap.get(key);
-                }
+        mSipRequestIdMap.remove(task.mSipRequestId, task);
+
+        if(task instanceof PresenceTask){
+            String[] contacts = ((PresenceTask)task).mContacts;
+            if(contacts != null && contacts.length == 1){
+                removeContactIndexInternal(contacts[0], (PresenceTask)task);
             }
         }
+    }
 
-        logger.debug("getTaskByRequestId, sipRequestId=" + sipRequestId + " task=null");
-        return null;
+    /**
+     * @return the contact number formatted by ContactNumberUtils, which keys the contacts.
+     */
+    public static String getContactKey(String contact){
+        String formatedContact = ContactNumberUtils.getDefault().format(contact);
+        return formatedContact != null ? formatedContact : contact;
     }
 
-    public void onTerminated(String contact){ // for single number capability polling
+    private void addContactIndexInternal(String contact, PresenceTask task){
+        if(contact == null){
+            return;
+        }
+
+        String key = getContactKey(contact);
+        List<PresenceTask> tasks = mContactTaskMap.get(key);
+        if(tasks == null){
+            tasks = new CopyOnWriteArrayList<PresenceTask>();
+            mContactTaskMap.put(key, tasks);
+        }
+        tasks.add(task);
+    }
+
+    private void removeContactIndexInternal(String contact, PresenceTask task){
         if(contact == null){
             return;
         }
 
+        String key = getContactKey(contact);
+        List<PresenceTask> tasks = mContactTaskMap.get(key);
+        if(tasks == null){
+            return;
+        }
+
+        tasks.remove(task);
+        if(tasks.isEmpty()){
+            mContactTaskMap.remove(key);
+        }
+    }
+
+    public void startTimeoutTimer(Context context, int taskId, long timeout){
+        mTimeoutWheel.schedule(context, taskId, timeout);
+    }
+
+    public void cancelTimeoutTimer(int taskId){
+        mTimeoutWheel.cancel(taskId);
+    }
+
+    public void setSipRequestId(Task task, int sipRequestId){
+        if(task == null){
+            return;
+        }
+
         synchronized (mSyncObj){
-            Set<String> keys= mTaskMap.keySet();
-            if(keys == null){
-                logger.debug("onTerminated keys is null");
-                return;
+            mSipRequestIdMap.remove(task.mSipRequestId, task);
+
+            task.mSipRequestId = sipRequestId;
+
+            // The task could have been removed by timeout or error before got the request id.
+            if(mTaskMap.get(task.mTaskId) == task){
+                mSipRequestIdMap.put(sipRequestId, task);
             }
+        }
+    }
+
+    public Task getTaskByRequestId(int sipRequestId){
+        Task task = mSipRequestIdMap.get(sipRequestId);
 
-            for(String key:keys){
-                Task task = mTaskMap.get(key);
-                if(task == null){
+        logger.debug("getTaskByRequestId, sipRequestId=" + sipRequestId + " task=" + task);
+        return task;
+    }
+
+    public void onTerminated(String contact){ // for single number capability polling
+        if(contact == null){
+            return;
+        }
+
+        List<PresenceTask> tasks = mContactTaskMap.get(getContactKey(contact));
+        if(tasks == null){
+            logger.debug("onTerminated no task for the contact");
+            return;
+        }
+
+        for(PresenceTask task : tasks){
+            if(task instanceof PresenceCapabilityTask){
+                PresenceCapabilityTask capabilityTask = (PresenceCapabilityTask)task;
+                if(!capabilityTask.isWaitingForNotify()){
+                    logger.debug("onTerminated the tesk is not waiting for NOTIFY yet");
                     continue;
                 }
 
-                if(task instanceof PresenceCapabilityTask){
-                    PresenceCapabilityTask capabilityTask = (PresenceCapabilityTask)task;
-                    if(capabilityTask.mContacts != null && capabilityTask.mContacts[0] != null &&
-                            PhoneNumberUtils.compare(contact, capabilityTask.mContacts[0])){
-                        if(!capabilityTask.isWaitingForNotify()){
-                            logger.debug("onTerminated the tesk is not waiting for NOTIFY yet");
-                            continue;
-                        }
-
-                        MessageData messageData = new MessageData();
-                        messageData.mTask = capabilityTask;
-                        messageData.mReason = null;
-
-                        Message notifyMessage = sMsgHandler.obtainMessage(
-                                TASK_MANAGER_ON_TERMINATED,
-                                messageData);
-                        sMsgHandler.sendMessage(notifyMessage);
-                    }
-                }
+                MessageData messageData = new MessageData();
+                messageData.mTask = capabilityTask;
+                messageData.mReason = null;
+
+                Message notifyMessage = sMsgHandler.obtainMessage(
+                        TASK_MANAGER_ON_TERMINATED,
+                        messageData);
+                sMsgHandler.sendMessage(notifyMessage);
             }
         }
     }
@@ -240,16 +335,14 @@ public class TaskManager{
             return;
         }
 
-        synchronized (mSyncObj){
-            if(task instanceof PresenceCapabilityTask){
-                MessageData messageData = new MessageData();
-                messageData.mTask = (PresenceCapabilityTask)task;
-                messageData.mReason = reason;
+        if(task instanceof PresenceCapabilityTask){
+            MessageData messageData = new MessageData();
+            messageData.mTask = (PresenceCapabilityTask)task;
+            messageData.mReason = reason;
 
-                Message notifyMessage = sMsgHandler.obtainMessage(TASK_MANAGER_ON_TERMINATED,
-                        messageData);
-                sMsgHandler.sendMessage(notifyMessage);
-            }
+            Message notifyMessage = sMsgHandler.obtainMessage(TASK_MANAGER_ON_TERMINATED,
+                    messageData);
+            sMsgHandler.sendMessage(notifyMessage);
         }
     }
 
@@ -261,18 +354,16 @@ public class TaskManager{
             logger.debug("onTimeout task = null");
             return;
         }
-        synchronized (mSyncObj){
-            if(task instanceof PresenceCapabilityTask){
-                MessageData messageData = new MessageData();
-                messageData.mTask = (PresenceCapabilityTask)task;
-                messageData.mReason = null;
-
-                Message timeoutMessage = sMsgHandler.obtainMessage(TASK_MANAGER_ON_TIMEOUT,
-                        messageData);
-                sMsgHandler.sendMessage(timeoutMessage);
-            }else{
-                logger.debug("not PresenceCapabilityTask, taskId=" + taskId);
-            }
+        if(task instanceof PresenceCapabilityTask){
+            MessageData messageData = new MessageData();
+            messageData.mTask = (PresenceCapabilityTask)task;
+            messageData.mReason = null;
+
+            Message timeoutMessage = sMsgHandler.obtainMessage(TASK_MANAGER_ON_TIMEOUT,
+                    messageData);
+            sMsgHandler.sendMessage(timeoutMessage);
+        }else{
+            logger.debug("not PresenceCapabilityTask, taskId=" + taskId);
         }
     }
 
@@ -319,72 +410,152 @@ public class TaskManager{
                     break;
                 }
 
+                case TASK_MANAGER_CLEAR_TIMEOUT_AVAILABILITY:
+                {
+                    clearTimeoutAvailabilityTaskInternal();
+                    break;
+                }
+
                 default:
                     logger.debug("handleMessage unknown msg=" + msg.what);
             }
         }
     }
 
-    public void clearTimeoutAvailabilityTask(long availabilityExpire) {
-       logger.debug("clearTimeoutAvailabilityTask");
+    private static class AvailabilityExpiry{
+        final PresenceAvailabilityTask mTask;
+        final long mStartTime;
 
-        synchronized (mSyncObj) {
-            long currentTime = System.currentTimeMillis();
+        AvailabilityExpiry(PresenceAvailabilityTask task, long startTime){
+            mTask = task;
+            mStartTime = startTime;
+        }
+    }
 
-            Iterator<Map.Entry<String, Task>> iterator = mTaskMap.entrySet().iterator();
-            while (iterator.hasNext()) {
-                Map.Entry<String, Task> entry = iterator.next();
-
-                Task task = (Task) entry.getValue();
-                logger.debug("Currently existing Availability task, key: " + entry.getKey()
-                        + ", Task: " + task);
-
-                if ((task != null) && (task instanceof PresenceAvailabilityTask)) {
-                    PresenceAvailabilityTask presenceTask = (PresenceAvailabilityTask)task;
-
-                    long notifyTimestamp = presenceTask.getNotifyTimestamp();
-                    long createTimestamp = presenceTask.getCreateTimestamp();
-                    logger.debug("createTimestamp=" + createTimestamp + " notifyTimestamp=" +
-                            notifyTimestamp + " currentTime=" + currentTime);
-
-                     // remove it if it didn't get notify in 60s.
-                     // or get notify for 60s
-                    if(((notifyTimestamp != 0) &&
-                            (notifyTimestamp + availabilityExpire < currentTime)) ||
-                            (notifyTimestamp == 0) &&
-                            (createTimestamp + availabilityExpire < currentTime)) {
-                        logger.debug("remove expired availability task:" + presenceTask);
-                        iterator.remove();
-                    }
+    /**
+     * Stamps the NOTIFY time on all the availability tasks of the contact, so none of them
+     * times out.
+     */
+    public void updateAvailabilityNotifyTimestamp(String contact){
+        if(contact == null){
+            return;
+        }
+
+        List<PresenceTask> tasks = mContactTaskMap.get(getContactKey(contact));
+        if(tasks == null){
+            return;
+        }
+
+        synchronized (mSyncObj){
+            for(PresenceTask task : tasks){
+                if(!(task instanceof PresenceAvailabilityTask)){
+                    continue;
+                }
+
+                PresenceAvailabilityTask availabilityTask = (PresenceAvailabilityTask)task;
+                availabilityTask.updateNotifyTimestamp();
+                if(mTaskMap.get(availabilityTask.mTaskId) == availabilityTask){
+                    mAvailabilityExpiryQueue.offer(new AvailabilityExpiry(availabilityTask,
+                            availabilityTask.getNotifyTimestamp()));
                 }
             }
         }
     }
 
-    public PresenceAvailabilityTask getAvailabilityTaskByContact(String contact){
+    /**
+     * Clears the availability tasks which are out of the cache window. The caller doesn't
+     * wait for it. The tasks are removed on the message handler thread, which also wakes up
+     * for the next expiry.
+     */
+    public void clearTimeoutAvailabilityTask(long availabilityExpire) {
+        logger.debug("clearTimeoutAvailabilityTask availabilityExpire=" + availabilityExpire);
+
+        mAvailabilityExpire = availabilityExpire;
+        sMsgHandler.removeMessages(TASK_MANAGER_CLEAR_TIMEOUT_AVAILABILITY);
+        sMsgHandler.sendEmptyMessage(TASK_MANAGER_CLEAR_TIMEOUT_AVAILABILITY);
+    }
+
+    private void scheduleClearTimeoutAvailabilityTask(){
+        long availabilityExpire = mAvailabilityExpire;
+        if(availabilityExpire <= 0){
+            return;
+        }
+
+        long nextStartTime;
         synchronized (mSyncObj){
-            Set<String> keys= mTaskMap.keySet();
-            if(keys == null){
-                logger.debug("getTaskByContact keys=null");
-                return null;
+            AvailabilityExpiry head = mAvailabilityExpiryQueue.peek();
+            if(head == null){
+                return;
             }
+            nextStartTime = head.mStartTime;
+        }
 
-            for(String key:keys){
-                Task task = mTaskMap.get(key);
-                if(task == null){
+        long delay = Math.max(0,
+                nextStartTime + availabilityExpire - System.currentTimeMillis() + 1);
+        sMsgHandler.removeMessages(TASK_MANAGER_CLEAR_TIMEOUT_AVAILABILITY);
+        sMsgHandler.sendEmptyMessageDelayed(TASK_MANAGER_CLEAR_TIMEOUT_AVAILABILITY, delay);
+    }
+
+    private void clearTimeoutAvailabilityTaskInternal(){
+        long availabilityExpire = mAvailabilityExpire;
+        if(availabilityExpire <= 0){
+            return;
+        }
+
+        List<PresenceAvailabilityTask> timeoutTasks = new ArrayList<PresenceAvailabilityTask>();
+        synchronized (mSyncObj) {
+            long currentTime = System.currentTimeMillis();
+
+            AvailabilityExpiry expiry;
+            while((expiry = mAvailabilityExpiryQueue.peek()) != null &&
+                    expiry.mStartTime + availabilityExpire < currentTime){
+                mAvailabilityExpiryQueue.poll();
+
+                PresenceAvailabilityTask presenceTask = expiry.mTask;
+                if(mTaskMap.get(presenceTask.mTaskId) != presenceTask ||
+                        presenceTask.getStartTimestamp() != expiry.mStartTime){
+                    // The task had been removed or got the notify after it was queued.
                     continue;
                 }
 
-                if(task instanceof PresenceAvailabilityTask){
-                    PresenceAvailabilityTask availabilityTask = (PresenceAvailabilityTask)task;
-                    if(PhoneNumberUtils.compare(contact, availabilityTask.mContacts[0])){
-                        return availabilityTask;
-                    }
+                // remove it if it didn't get notify in 60s.
+                // or get notify for 60s
+                logger.debug("remove expired availability task:" + presenceTask);
+                mTaskMap.remove(presenceTask.mTaskId, presenceTask);
+                removeIndexesInternal(presenceTask);
+
+                if(presenceTask.getNotifyTimestamp() == 0){
+                    timeoutTasks.add(presenceTask);
                 }
             }
         }
 
-        return null;
+        for(PresenceAvailabilityTask presenceTask : timeoutTasks){
+            presenceTask.onTimeout();
+        }
+
+        scheduleClearTimeoutAvailabilityTask();
+    }
+
+    public PresenceAvailabilityTask getAvailabilityTaskByContact(String contact){
+        if(contact == null){
+            return null;
+        }
+
+        List<PresenceTask> tasks = mContactTaskMap.get(getContactKey(contact));
+        if(tasks == null){
+            return null;
+        }
+
+        // The newest one, which is the only one can still be waiting for the NOTIFY.
+        PresenceAvailabilityTask availabilityTask = null;
+        for(PresenceTask task : tasks){
+            if(task instanceof PresenceAvailabilityTask){
+                availabilityTask = (PresenceAvailabilityTask)task;
+            }
+        }
+
+        return availabilityTask;
     }
 }
 
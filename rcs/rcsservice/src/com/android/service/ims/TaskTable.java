@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.service.ims;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Int keyed task table which can be read without locking.
+ *
+ * The keys are handed out in increasing order, so a task normally owns the ring slot of its
+ * key and a lookup is one array read. A task is moved to the overflow map only when its slot is
+ * still held by an older task which is more than one ring behind.
+ *
+ * There is a single writer at a time: the writers of the TaskManager tables hold
+ * TaskManager.mSyncObj, so put and remove don't race with each other. The readers don't lock,
+ * and forEach sees each task which is in the table for the whole walk.
+ */
+public class TaskTable {
+    private static final int RING_SIZE = 1024;
+    private static final int RING_MASK = RING_SIZE - 1;
+
+    private final AtomicReferenceArray<Task> mRing = new AtomicReferenceArray<Task>(RING_SIZE);
+
+    private final ConcurrentHashMap<Integer, Task> mOverflow =
+            new ConcurrentHashMap<Integer, Task>();
+
+    /**
+     * Returns the key of the task in this table. It is the task id by default.
+     */
+    protected int getKey(Task task) {
+        return task.mTaskId;
+    }
+
+    public Task get(int key) {
+        Task task = mRing.get(key & RING_MASK);
+        if (task != null && getKey(task) == key) {
+            return task;
+        }
+
+        if (mOverflow.isEmpty()) {
+            return null;
+        }
+
+        return mOverflow.get(key);
+    }
+
+    /**
+     * @return the task which had the same key before.
+     */
+    public Task put(int key, Task task) {
+        if (!mOverflow.isEmpty() && mOverflow.containsKey(key)) {
+            return mOverflow.put(key, task);
+        }
+
+        int slot = key & RING_MASK;
+        while (true) {
+            Task old = mRing.get(slot);
+            if (old == null) {
+                if (mRing.compareAndSet(slot, null, task)) {
+                    return null;
+                }
+            } else if (getKey(old) == key) {
+                if (mRing.compareAndSet(slot, old, task)) {
+                    return old;
+                }
+            } else {
+                return mOverflow.put(key, task);
+            }
+        }
+    }
+
+    /**
+     * @return the removed task.
+     */
+    public Task remove(int key) {
+        int slot = key & RING_MASK;
+        Task task = mRing.get(slot);
+        if (task != null && getKey(task) == key && mRing.compareAndSet(slot, task, null)) {
+            return task;
+        }
+
+        if (mOverflow.isEmpty()) {
+            return null;
+        }
+
+        return mOverflow.remove(key);
+    }
+
+    /**
+     * Removes the key only if it still maps to the given task.
+     */
+    public boolean remove(int key, Task task) {
+        if (task == null) {
+            return false;
+        }
+
+        if (mRing.compareAndSet(key & RING_MASK, task, null)) {
+            return true;
+        }
+
+        return mOverflow.remove(key, task);
+    }
+
+    public void forEach(Consumer<Task> action) {
+        for (int i = 0; i < RING_SIZE; i++) {
+            Task task = mRing.get(i);
+            if (task != null) {
+                action.accept(task);
+            }
+        }
+
+        for (Task task : mOverflow.values()) {
+            action.accept(task);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.service.ims;
+
+import android.app.AlarmManager;
+import android.content.Context;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.SparseArray;
+
+import com.android.ims.internal.Logger;
+
+/**
+ * Hierarchical timing wheel for the task timeouts.
+ *
+ * All the timeouts share one wakeup alarm which is armed for the earliest deadline. The alarm
+ * is delivered to the given handler in process, then the wheel is advanced to the current time
+ * and the expired tasks are reported to the listener.
+ */
+public class TaskTimeoutWheel {
+    /*
+     * The logger
+     */
+    private Logger logger = Logger.getLogger(this.getClass().getName());
+
+    private static final String ALARM_TAG = "RcsService.TaskTimeout";
+
+    // The resolution of the wheel in ms.
+    private static final long TICK_MS = 1000;
+
+    // 64 slots for each level and 4 levels, which covers 64^4 ticks.
+    private static final int SLOT_BITS = 6;
+    private static final int SLOT_COUNT = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOT_COUNT - 1;
+    private static final int LEVEL_COUNT = 4;
+
+    private static final long NO_ALARM = Long.MAX_VALUE;
+
+    public interface Listener {
+        void onTaskTimeout(int taskId);
+    }
+
+    private static class Timeout {
+        final int mTaskId;
+        final long mDeadlineTick;
+
+        int mLevel;
+        int mSlot;
+        Timeout mPrev;
+        Timeout mNext;
+
+        Timeout(int taskId, long deadlineTick) {
+            mTaskId = taskId;
+            mDeadlineTick = deadlineTick;
+        }
+    }
+
+    // The heads of the doubly linked timeout lists of each slot.
+    private final Timeout[][] mSlots = new Timeout[LEVEL_COUNT][SLOT_COUNT];
+
+    private final SparseArray<Timeout> mTimeouts = new SparseArray<Timeout>();
+
+    private final Handler mHandler;
+    private final Listener mListener;
+
+    private AlarmManager mAlarmManager = null;
+
+    // All the ticks up to and including it had been processed.
+    private long mCurrentTick;
+
+    // The tick which the alarm is armed for.
+    private long mAlarmTick = NO_ALARM;
+
+    private final AlarmManager.OnAlarmListener mAlarmListener = () -> onAlarm();
+
+    public TaskTimeoutWheel(Handler handler, Listener listener) {
+        mHandler = handler;
+        mListener = listener;
+        mCurrentTick = SystemClock.elapsedRealtime() / TICK_MS;
+    }
+
+    public synchronized void schedule(Context context, int taskId, long timeout) {
+        if (mAlarmManager == null && context != null) {
+            mAlarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        }
+
+        removeInternal(taskId);
+
+        long now = SystemClock.elapsedRealtime();
+        if (mTimeouts.size() == 0) {
+            // Nothing is pending, so there is no need to replay the idle ticks.
+            mCurrentTick = now / TICK_MS;
+        }
+
+        Timeout entry = new Timeout(taskId, (now + timeout + TICK_MS - 1) / TICK_MS);
+        mTimeouts.put(taskId, entry);
+        insert(entry);
+
+        logger.debug("schedule taskId=" + taskId + " deadlineTick=" + entry.mDeadlineTick +
+                " pending=" + mTimeouts.size());
+
+        if (entry.mDeadlineTick < mAlarmTick) {
+            setAlarm(entry.mDeadlineTick);
+        }
+    }
+
+    public synchronized void cancel(int taskId) {
+        Timeout timeout = removeInternal(taskId);
+        if (timeout == null) {
+            return;
+        }
+
+        logger.debug("cancel taskId=" + taskId + " pending=" + mTimeouts.size());
+
+        if (timeout.mDeadlineTick == mAlarmTick) {
+            updateAlarm();
+        }
+    }
+
+    private void onAlarm() {
+        int[] expiredTaskIds;
+        int expiredCount = 0;
+
+        synchronized (this) {
+            mAlarmTick = NO_ALARM;
+
+            long nowTick = SystemClock.elapsedRealtime() / TICK_MS;
+            expiredTaskIds = new int[mTimeouts.size()];
+            while (mCurrentTick < nowTick && mTimeouts.size() > 0) {
+                mCurrentTick++;
+                cascade(mCurrentTick);
+
+                int slot = (int) (mCurrentTick & SLOT_MASK);
+                Timeout timeout = mSlots[0][slot];
+                mSlots[0][slot] = null;
+                while (timeout != null) {
+                    Timeout next = timeout.mNext;
+                    timeout.mPrev = null;
+                    timeout.mNext = null;
+                    if (timeout.mDeadlineTick <= mCurrentTick) {
+                        mTimeouts.remove(timeout.mTaskId);
+                        expiredTaskIds[expiredCount++] = timeout.mTaskId;
+                    } else {
+                        insert(timeout);
+                    }
+                    timeout = next;
+                }
+            }
+
+            if (mTimeouts.size() == 0) {
+                mCurrentTick = nowTick;
+            }
+
+            logger.debug("onAlarm expired=" + expiredCount + " pending=" + mTimeouts.size());
+            updateAlarm();
+        }
+
+        // Report without holding the lock since the listener could cancel other timeouts.
+        for (int i = 0; i < expiredCount; i++) {
+            mListener.onTaskTimeout(expiredTaskIds[i]);
+        }
+    }
+
+    // Moves the timeouts of the higher level slots which start at the tick down to the lower
+    // levels. The highest level goes first so its timeouts can be cascaded again below.
+    private void cascade(long tick) {
+        int level = 0;
+        while (level + 1 < LEVEL_COUNT &&
+                ((tick >> (SLOT_BITS * (level + 1))) << (SLOT_BITS * (level + 1))) == tick) {
+            level++;
+        }
+
+        for (; level > 0; level--) {
+            int slot = (int) ((tick >> (SLOT_BITS * level)) & SLOT_MASK);
+            Timeout timeout = mSlots[level][slot];
+            mSlots[level][slot] = null;
+            while (timeout != null) {
+                Timeout next = timeout.mNext;
+                timeout.mPrev = null;
+                timeout.mNext = null;
+                insert(timeout);
+                timeout = next;
+            }
+        }
+    }
+
+    private void insert(Timeout timeout) {
+        long tick = Math.max(timeout.mDeadlineTick, mCurrentTick);
+        long delta = tick - mCurrentTick;
+
+        int level = 0;
+        while (level + 1 < LEVEL_COUNT && delta >= (1L << (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+
+        if (delta >= (1L << (SLOT_BITS * LEVEL_COUNT))) {
+            // Out of range of the wheel. Park it in the farthest slot, it will be re-inserted
+            // when the slot is cascaded.
+            tick = mCurrentTick + (1L << (SLOT_BITS * LEVEL_COUNT)) - 1;
+        }
+
+        int slot = (int) ((tick >> (SLOT_BITS * level)) & SLOT_MASK);
+        timeout.mLevel = level;
+        timeout.mSlot = slot;
+        timeout.mPrev = null;
+        timeout.mNext = mSlots[level][slot];
+        if (timeout.mNext != null) {
+            timeout.mNext.mPrev = timeout;
+        }
+        mSlots[level][slot] = timeout;
+    }
+
+    private Timeout removeInternal(int taskId) {
+        Timeout timeout = mTimeouts.get(taskId);
+        if (timeout == null) {
+            return null;
+        }
+
+        mTimeouts.remove(taskId);
+        if (timeout.mPrev != null) {
+            timeout.mPrev.mNext = timeout.mNext;
+        } else {
+            mSlots[timeout.mLevel][timeout.mSlot] = timeout.mNext;
+        }
+
+        if (timeout.mNext != null) {
+            timeout.mNext.mPrev = timeout.mPrev;
+        }
+
+        timeout.mPrev = null;
+        timeout.mNext = null;
+        return timeout;
+    }
+
+    // Finds the earliest deadline from the first non-empty slot of each level. The slot of the
+    // current index is checked last since it holds the timeouts one full round ahead.
+    private long findNextDeadlineTick() {
+        long next = NO_ALARM;
+        for (int level = 0; level < LEVEL_COUNT; level++) {
+            long index = mCurrentTick >> (SLOT_BITS * level);
+            for (int i = 1; i <= SLOT_COUNT; i++) {
+                Timeout timeout = mSlots[level][(int) ((index + i) & SLOT_MASK)];
+                if (timeout == null) {
+                    continue;
+                }
+
+                for (; timeout != null; timeout = timeout.mNext) {
+                    next = Math.min(next, timeout.mDeadlineTick);
+                }
+                break;
+            }
+        }
+
+        return next;
+    }
+
+    private void updateAlarm() {
+        if (mTimeouts.size() == 0) {
+            if (mAlarmTick != NO_ALARM && mAlarmManager != null) {
+                mAlarmManager.cancel(mAlarmListener);
+            }
+            mAlarmTick = NO_ALARM;
+            return;
+        }
+
+        setAlarm(findNextDeadlineTick());
+    }
+
+    private void setAlarm(long tick) {
+        if (mAlarmManager == null) {
+            logger.error("setAlarm mAlarmManager is null");
+            return;
+        }
+
+        // Setting the same listener again replaces the alarm armed before.
+        mAlarmTick = tick;
+        mAlarmManager.setExact(AlarmManager.ELAPSED_REALTIME_WAKEUP, tick * TICK_MS, ALARM_TAG,
+                mAlarmListener, mHandler);
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.service.ims;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.telephony.CarrierConfigManager;
+import android.telephony.PhoneStateListener;
+import android.telephony.ServiceState;
+import android.telephony.SubscriptionManager;
+import android.telephony.TelephonyManager;
+
+import com.android.ims.internal.Logger;
+import com.android.internal.telephony.TelephonyIntents;
+
+/**
+ * Keeps a snapshot of the telephony and ISIM state which the subscribe and publish requests
+ * need, so they don't call into the phone process for each request or contact.
+ *
+ * The snapshot is read again when the SIM state, the carrier config or the default voice
+ * subscription changes. The network type is taken from the service state callbacks.
+ */
+public class TelephonyStateCache {
+    /*
+     * The logger
+     */
+    private Logger logger = Logger.getLogger(this.getClass().getName());
+
+    /**
+     * The immutable telephony state. Don't change the array returned by getIsimImpu.
+     */
+    public static class Snapshot {
+        private final int mPhoneId;
+        private final int mNetworkType;
+        private final String mIsimDomain;
+        private final String[] mIsimImpu;
+        private final String mLine1Number;
+
+        Snapshot(int phoneId, int networkType, String isimDomain, String[] isimImpu,
+                String line1Number) {
+            mPhoneId = phoneId;
+            mNetworkType = networkType;
+            mIsimDomain = isimDomain;
+            mIsimImpu = isimImpu;
+            mLine1Number = line1Number;
+        }
+
+        Snapshot withNetworkType(int networkType) {
+            return new Snapshot(mPhoneId, networkType, mIsimDomain, mIsimImpu, mLine1Number);
+        }
+
+        public int getPhoneId() {
+            return mPhoneId;
+        }
+
+        public int getNetworkType() {
+            return mNetworkType;
+        }
+
+        public String getIsimDomain() {
+            return mIsimDomain;
+        }
+
+        public String[] getIsimImpu() {
+            return mIsimImpu;
+        }
+
+        public String getLine1Number() {
+            return mLine1Number;
+        }
+
+        @Override
+        public String toString() {
+            return "phoneId=" + mPhoneId + " networkType=" + mNetworkType +
+                    " isimDomain=" + mIsimDomain;
+        }
+    }
+
+    private static TelephonyStateCache sInstance = null;
+
+    private final Context mContext;
+
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+
+    private volatile Snapshot mSnapshot = null;
+
+    private BroadcastReceiver mReceiver = null;
+    private PhoneStateListener mPhoneStateListener = null;
+
+    private TelephonyStateCache(Context context) {
+        mContext = context;
+
+        mThread = new HandlerThread("TelephonyStateCache",
+                android.os.Process.THREAD_PRIORITY_BACKGROUND);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+
+        init();
+    }
+
+    public static synchronized TelephonyStateCache getInstance(Context context) {
+        if ((sInstance == null) && (context != null)) {
+            sInstance = new TelephonyStateCache(context);
+        }
+
+        return sInstance;
+    }
+
+    private void init() {
+        mReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                logger.debug("onReceive intent=" + intent);
+                refresh();
+            }
+        };
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(TelephonyIntents.ACTION_SIM_STATE_CHANGED);
+        filter.addAction(TelephonyIntents.ACTION_DEFAULT_VOICE_SUBSCRIPTION_CHANGED);
+        filter.addAction(CarrierConfigManager.ACTION_CARRIER_CONFIG_CHANGED);
+        mContext.registerReceiver(mReceiver, filter, null, mHandler);
+
+        mPhoneStateListener = new PhoneStateListener(mThread.getLooper()) {
+            @Override
+            public void onServiceStateChanged(ServiceState serviceState) {
+                onNetworkTypeChanged(serviceState.getDataNetworkType());
+            }
+        };
+
+        TelephonyManager teleMgr = getTelephonyManager();
+        if (teleMgr != null) {
+            teleMgr.listen(mPhoneStateListener, PhoneStateListener.LISTEN_SERVICE_STATE);
+        }
+    }
+
+    private TelephonyManager getTelephonyManager() {
+        return (TelephonyManager) mContext.getSystemService(Context.TELEPHONY_SERVICE);
+    }
+
+    /**
+     * @return the latest snapshot, it is read at once if there isn't one yet.
+     */
+    public Snapshot getSnapshot() {
+        Snapshot snapshot = mSnapshot;
+        if (snapshot == null) {
+            snapshot = refresh();
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Reads the telephony state again, e.g. while waiting for the ISIM records to be loaded.
+     *
+     * It holds the lock of the cache, so a network type from the service state callback is not
+     * overwritten by the older one which is read here.
+     */
+    public synchronized Snapshot refresh() {
+        int phoneId = SubscriptionManager.getDefaultVoicePhoneId();
+        int networkType = TelephonyManager.NETWORK_TYPE_UNKNOWN;
+        String isimDomain = null;
+        String[] isimImpu = null;
+        String line1Number = null;
+
+        TelephonyManager teleMgr = getTelephonyManager();
+        if (teleMgr != null) {
+            networkType = teleMgr.getNetworkType();
+            isimDomain = teleMgr.getIsimDomain();
+            isimImpu = teleMgr.getIsimImpu();
+            line1Number = teleMgr.getLine1Number();
+        } else {
+            logger.error("teleMgr = null");
+        }
+
+        Snapshot snapshot = new Snapshot(phoneId, networkType, isimDomain, isimImpu,
+                line1Number);
+        mSnapshot = snapshot;
+        logger.print("refresh " + snapshot);
+        return snapshot;
+    }
+
+    private synchronized void onNetworkTypeChanged(int networkType) {
+        Snapshot snapshot = mSnapshot;
+        if (snapshot == null) {
+            refresh();
+            return;
+        }
+
+        if (snapshot.getNetworkType() != networkType) {
+            logger.debug("onNetworkTypeChanged networkType=" + networkType);
+            mSnapshot = snapshot.withNetworkType(networkType);
+        }
+    }
+
+    public void finish() {
+        synchronized (TelephonyStateCache.class) {
+            if (sInstance == this) {
+                sInstance = null;
+            }
+        }
+
+        if (mReceiver != null) {
+            mContext.unregisterReceiver(mReceiver);
+            mReceiver = null;
+        }
+
+        TelephonyManager teleMgr = getTelephonyManager();
+        if (mPhoneStateListener != null && teleMgr != null) {
+            teleMgr.listen(mPhoneStateListener, PhoneStateListener.LISTEN_NONE);
+            mPhoneStateListener = null;
+        }
+
+        mThread.quitSafely();
+    }
+}
@@ -35,15 +35,12 @@ import android.content.Intent;
 import com.android.ims.internal.Logger;
 
 import com.android.service.ims.RcsStackAdaptor;
-import com.android.service.ims.TaskManager;
 
 public class AlarmBroadcastReceiver extends BroadcastReceiver{
     private Logger logger = Logger.getLogger(this.getClass().getName());
 
     private static final String ACTION_RETRY_ALARM =
             RcsStackAdaptor.ACTION_RETRY_ALARM;
-    private static final String ACTION_TASK_TIMEOUT_ALARM =
-            PresenceCapabilityTask.ACTION_TASK_TIMEOUT_ALARM;
     private static final String ACTION_RETRY_PUBLISH_ALARM =
             PresencePublication.ACTION_RETRY_PUBLISH_ALARM;
 
@@ -63,9 +60,6 @@ public class AlarmBroadcastReceiver extends BroadcastReceiver{
         if(ACTION_RETRY_ALARM.equals(action)) {
             int times = intent.getIntExtra("times", -1);
             rcsStackAdaptor.startInitThread(times);
-        }else if(ACTION_TASK_TIMEOUT_ALARM.equals(action)){
-            int taskId = intent.getIntExtra("taskId", -1);
-            TaskManager.getDefault().onTimeout(taskId);
         } else if(ACTION_RETRY_PUBLISH_ALARM.equals(action)) {
             // default retry is for 888
             int sipCode = intent.getIntExtra("sipCode", 888);
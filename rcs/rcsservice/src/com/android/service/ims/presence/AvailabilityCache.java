@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.service.ims.presence;
+
+import android.text.TextUtils;
+import android.util.LruCache;
+
+import com.android.ims.RcsPresenceInfo;
+import com.android.ims.internal.ContactNumberUtils;
+import com.android.ims.internal.Logger;
+
+/**
+ * The latest presence information got from the network, keyed by the contact number which had
+ * been formatted by ContactNumberUtils. It is used to answer the availability requests within
+ * the availability cache window without sending them to the network.
+ */
+public class AvailabilityCache {
+    /*
+     * The logger
+     */
+    private Logger logger = Logger.getLogger(this.getClass().getName());
+
+    private static final int MAX_CACHE_SIZE = 100;
+
+    private static class Entry {
+        final RcsPresenceInfo mPresenceInfo;
+        final long mTimestamp;
+
+        Entry(RcsPresenceInfo presenceInfo, long timestamp) {
+            mPresenceInfo = presenceInfo;
+            mTimestamp = timestamp;
+        }
+    }
+
+    private final LruCache<String, Entry> mCache = new LruCache<String, Entry>(MAX_CACHE_SIZE);
+
+    private static String getKey(String contact) {
+        String formatedContact = ContactNumberUtils.getDefault().format(contact);
+        return formatedContact != null ? formatedContact : contact;
+    }
+
+    public void put(RcsPresenceInfo presenceInfo) {
+        if (presenceInfo == null || TextUtils.isEmpty(presenceInfo.getContactNumber())) {
+            return;
+        }
+
+        mCache.put(getKey(presenceInfo.getContactNumber()),
+                new Entry(presenceInfo, System.currentTimeMillis()));
+    }
+
+    /**
+     * @return the cached presence information if it was got in the last availabilityExpire ms.
+     */
+    public RcsPresenceInfo get(String contact, long availabilityExpire) {
+        if (TextUtils.isEmpty(contact)) {
+            return null;
+        }
+
+        Entry entry = mCache.get(getKey(contact));
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.mTimestamp + availabilityExpire < System.currentTimeMillis()) {
+            logger.debug("get: the cached value is expired");
+            return null;
+        }
+
+        return entry.mPresenceInfo;
+    }
+
+    public void remove(String contact) {
+        if (TextUtils.isEmpty(contact)) {
+            return;
+        }
+
+        mCache.remove(getKey(contact));
+    }
+
+    public void clear() {
+        mCache.evictAll();
+    }
+}
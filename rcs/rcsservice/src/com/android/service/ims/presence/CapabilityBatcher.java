@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.service.ims.presence;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.RemoteException;
+import android.os.SystemProperties;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import com.android.ims.IRcsPresenceListener;
+import com.android.ims.RcsManager.ResultCode;
+import com.android.ims.internal.Logger;
+import com.android.service.ims.TaskManager;
+
+/**
+ * Collects the single contact capability requests which arrive within the batch window and
+ * subscribes them as one list. Each request gets its own request ID, the callbacks of the list
+ * are passed to all the requests in it.
+ */
+public class CapabilityBatcher {
+    /*
+     * The logger
+     */
+    private Logger logger = Logger.getLogger(this.getClass().getName());
+
+    // The batch window in ms, 0 to send the single contact requests at once. It is off by
+    // default since a batched request gets the errors of the stack by onError instead of the
+    // return value, set it for the devices which poll the contacts one by one.
+    private static final String PROPERTY_BATCH_WINDOW = "persist.rcs.capability.batch_window";
+    private static final int DEFAULT_BATCH_WINDOW = 0;
+
+    public interface BatchSender {
+        /**
+         * Subscribes the capability of the batch.
+         *
+         * @return the request ID of the batch, or the ResultCode (<0) for error.
+         */
+        int sendBatch(String[] formatedNumbers, IRcsPresenceListener batchListener);
+    }
+
+    private static class Request {
+        final int mRequestId;
+        final IRcsPresenceListener mListener;
+
+        Request(int requestId, IRcsPresenceListener listener) {
+            mRequestId = requestId;
+            mListener = listener;
+        }
+    }
+
+    private final Handler mHandler;
+    private final BatchSender mBatchSender;
+
+    // The requests of each contact in the current batch, in the order they arrived.
+    private LinkedHashMap<String, List<Request>> mPendingRequests =
+            new LinkedHashMap<String, List<Request>>();
+
+    private final Runnable mFlushRunnable = () -> flush();
+
+    public CapabilityBatcher(Looper looper, BatchSender batchSender) {
+        mHandler = new Handler(looper);
+        mBatchSender = batchSender;
+    }
+
+    public boolean isEnabled() {
+        return SystemProperties.getInt(PROPERTY_BATCH_WINDOW, DEFAULT_BATCH_WINDOW) > 0;
+    }
+
+    /**
+     * Adds the request to the current batch.
+     *
+     * @param maxBatchSize the batch is sent at once when it has so many contacts.
+     * @return the request ID.
+     */
+    public int add(String formatedNumber, IRcsPresenceListener listener, int maxBatchSize) {
+        int requestId = TaskManager.getDefault().generateTaskId();
+
+        synchronized (this) {
+            List<Request> requests = mPendingRequests.get(formatedNumber);
+            if (requests == null) {
+                requests = new ArrayList<Request>(1);
+                mPendingRequests.put(formatedNumber, requests);
+            }
+            requests.add(new Request(requestId, listener));
+
+            logger.debug("add requestId=" + requestId + " batchSize=" + mPendingRequests.size());
+            if (mPendingRequests.size() >= maxBatchSize) {
+                mHandler.removeCallbacks(mFlushRunnable);
+                mHandler.post(mFlushRunnable);
+            } else if (mPendingRequests.size() == 1 && requests.size() == 1) {
+                mHandler.postDelayed(mFlushRunnable, SystemProperties.getInt(
+                        PROPERTY_BATCH_WINDOW, DEFAULT_BATCH_WINDOW));
+            }
+        }
+
+        return requestId;
+    }
+
+    private void flush() {
+        LinkedHashMap<String, List<Request>> batch;
+        synchronized (this) {
+            if (mPendingRequests.isEmpty()) {
+                return;
+            }
+
+            batch = mPendingRequests;
+            mPendingRequests = new LinkedHashMap<String, List<Request>>();
+        }
+
+        String[] formatedNumbers = batch.keySet().toArray(new String[batch.size()]);
+        List<Request> requests = new ArrayList<Request>();
+        for (List<Request> contactRequests : batch.values()) {
+            requests.addAll(contactRequests);
+        }
+
+        BatchListener batchListener = new BatchListener(requests);
+        int ret = mBatchSender.sendBatch(formatedNumbers, batchListener);
+        logger.print("flush contacts=" + formatedNumbers.length + " requests=" +
+                requests.size() + " ret=" + ret);
+        if (ret < ResultCode.SUCCESS) {
+            batchListener.onError(ret, ret);
+        }
+    }
+
+    // Passes the callbacks of the batch to the requests in it.
+    private class BatchListener extends IRcsPresenceListener.Stub {
+        private final List<Request> mRequests;
+
+        BatchListener(List<Request> requests) {
+            mRequests = requests;
+        }
+
+        @Override
+        public void onSuccess(int reqId) {
+            for (Request request : mRequests) {
+                try {
+                    if (request.mListener != null) {
+                        request.mListener.onSuccess(request.mRequestId);
+                    }
+                } catch (RemoteException e) {
+                    logger.debug("Failed to send the status to client.");
+                }
+            }
+        }
+
+        @Override
+        public void onError(int reqId, int resultCode) {
+            for (Request request : mRequests) {
+                try {
+                    if (request.mListener != null) {
+                        request.mListener.onError(request.mRequestId, resultCode);
+                    }
+                } catch (RemoteException e) {
+                    logger.debug("Failed to send the status to client.");
+                }
+            }
+        }
+
+        @Override
+        public void onFinish(int reqId) {
+            for (Request request : mRequests) {
+                try {
+                    if (request.mListener != null) {
+                        request.mListener.onFinish(request.mRequestId);
+                    }
+                } catch (RemoteException e) {
+                    logger.debug("Failed to send the status to client.");
+                }
+            }
+        }
+
+        @Override
+        public void onTimeout(int reqId) {
+            for (Request request : mRequests) {
+                try {
+                    if (request.mListener != null) {
+                        request.mListener.onTimeout(request.mRequestId);
+                    }
+                } catch (RemoteException e) {
+                    logger.debug("Failed to send the status to client.");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.service.ims.presence;
+
+import android.os.RemoteException;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import com.android.ims.IRcsPresenceListener;
+import com.android.ims.RcsManager.ResultCode;
+import com.android.ims.internal.Logger;
+
+/**
+ * Capability request of a contact list which is larger than the max number of entries in RCL.
+ *
+ * The list is subscribed as RCL sized chunks, each of them is a PresenceCapabilityTask. At
+ * most MAX_PARALLEL_CHUNKS of them are subscribed at the same time. The listener of the request
+ * gets onSuccess once the first chunk got "200 OK", then a single onFinish, onTimeout or
+ * onError after all the chunks are done.
+ */
+public class CapabilityListRequest {
+    /*
+     * The logger
+     */
+    private Logger logger = Logger.getLogger(this.getClass().getName());
+
+    private static final int MAX_PARALLEL_CHUNKS = 2;
+
+    public interface ChunkSender {
+        /**
+         * Subscribes the capability of the chunk.
+         *
+         * @return the task ID of the chunk, or the ResultCode (<0) for error.
+         */
+        int sendChunk(String[] formatedNumbers, IRcsPresenceListener chunkListener);
+    }
+
+    private final int mRequestId;
+    private final IRcsPresenceListener mListener;
+    private final ChunkSender mChunkSender;
+
+    private final LinkedList<String[]> mPendingChunks = new LinkedList<String[]>();
+
+    // The chunks which had been sent but are not done yet.
+    private int mRunningChunks = 0;
+
+    private int mSucceededChunks = 0;
+    private boolean mTimedOut = false;
+    private int mErrorCode = ResultCode.SUCCESS;
+
+    private boolean mStarted = false;
+    private boolean mFinished = false;
+
+    // The chunk tasks report to the request by it.
+    private final IRcsPresenceListener mChunkListener = new IRcsPresenceListener.Stub() {
+        @Override
+        public void onSuccess(int reqId) {
+            onChunkSuccess(reqId);
+        }
+
+        @Override
+        public void onError(int reqId, int resultCode) {
+            onChunkDone(reqId, resultCode, false);
+        }
+
+        @Override
+        public void onFinish(int reqId) {
+            onChunkDone(reqId, ResultCode.SUCCESS, false);
+        }
+
+        @Override
+        public void onTimeout(int reqId) {
+            onChunkDone(reqId, ResultCode.SUCCESS, true);
+        }
+    };
+
+    public CapabilityListRequest(int requestId, String[] formatedNumbers, int chunkSize,
+            IRcsPresenceListener listener, ChunkSender chunkSender) {
+        mRequestId = requestId;
+        mListener = listener;
+        mChunkSender = chunkSender;
+
+        chunkSize = Math.max(1, chunkSize);
+        for (int i = 0; i < formatedNumbers.length; i += chunkSize) {
+            mPendingChunks.add(Arrays.copyOfRange(formatedNumbers, i,
+                    Math.min(formatedNumbers.length, i + chunkSize)));
+        }
+
+        logger.debug("CapabilityListRequest requestId=" + requestId + " contacts=" +
+                formatedNumbers.length + " chunks=" + mPendingChunks.size());
+    }
+
+    public int getRequestId() {
+        return mRequestId;
+    }
+
+    /**
+     * Sends the first chunks.
+     *
+     * @return the request ID, or the ResultCode (<0) if none of the chunks could be sent.
+     */
+    public int start() {
+        sendPendingChunks();
+
+        boolean notify;
+        synchronized (this) {
+            if (mRunningChunks == 0 && mSucceededChunks == 0 && mPendingChunks.isEmpty()) {
+                // Nothing was sent, return the error to the caller directly.
+                mFinished = true;
+                return mErrorCode;
+            }
+
+            mStarted = true;
+            notify = checkFinishedLocked();
+        }
+
+        if (notify) {
+            notifyFinished();
+        }
+
+        return mRequestId;
+    }
+
+    private void sendPendingChunks() {
+        while (true) {
+            String[] chunk;
+            synchronized (this) {
+                if (mFinished || mRunningChunks >= MAX_PARALLEL_CHUNKS ||
+                        mPendingChunks.isEmpty()) {
+                    return;
+                }
+
+                chunk = mPendingChunks.removeFirst();
+                mRunningChunks++;
+            }
+
+            // Don't hold the lock since the chunk could be reported from the stack at once.
+            int ret = mChunkSender.sendChunk(chunk, mChunkListener);
+            if (ret < ResultCode.SUCCESS) {
+                logger.error("sendPendingChunks requestId=" + mRequestId + " ret=" + ret);
+                synchronized (this) {
+                    mRunningChunks--;
+                    mErrorCode = ret;
+                }
+            }
+        }
+    }
+
+    private void onChunkSuccess(int chunkId) {
+        boolean notify;
+        synchronized (this) {
+            notify = !mFinished && mSucceededChunks == 0;
+            mSucceededChunks++;
+        }
+
+        logger.debug("onChunkSuccess requestId=" + mRequestId + " chunkId=" + chunkId);
+        if (notify && mListener != null) {
+            try {
+                mListener.onSuccess(mRequestId);
+            } catch (RemoteException e) {
+                logger.debug("Failed to send the status to client.");
+            }
+        }
+    }
+
+    private void onChunkDone(int chunkId, int resultCode, boolean timedOut) {
+        logger.debug("onChunkDone requestId=" + mRequestId + " chunkId=" + chunkId +
+                " resultCode=" + resultCode + " timedOut=" + timedOut);
+
+        synchronized (this) {
+            mRunningChunks--;
+            if (resultCode < ResultCode.SUCCESS) {
+                mErrorCode = resultCode;
+            }
+            if (timedOut) {
+                mTimedOut = true;
+            }
+        }
+
+        sendPendingChunks();
+
+        boolean notify;
+        synchronized (this) {
+            notify = checkFinishedLocked();
+        }
+
+        if (notify) {
+            notifyFinished();
+        }
+    }
+
+    private boolean checkFinishedLocked() {
+        if (!mStarted || mFinished || mRunningChunks > 0 || !mPendingChunks.isEmpty()) {
+            return false;
+        }
+
+        mFinished = true;
+        return true;
+    }
+
+    private void notifyFinished() {
+        logger.debug("notifyFinished requestId=" + mRequestId + " succeeded=" +
+                mSucceededChunks + " timedOut=" + mTimedOut + " errorCode=" + mErrorCode);
+        if (mListener == null) {
+            return;
+        }
+
+        try {
+            if (mSucceededChunks == 0 && mErrorCode < ResultCode.SUCCESS) {
+                mListener.onError(mRequestId, mErrorCode);
+            } else if (mTimedOut) {
+                mListener.onTimeout(mRequestId);
+            } else {
+                mListener.onFinish(mRequestId);
+            }
+        } catch (RemoteException e) {
+            logger.debug("Failed to send the status to client.");
+        }
+    }
+}
@@ -61,7 +61,24 @@ public class PresenceAvailabilityTask extends PresenceTask{
     private long mCreateTimestamp = 0;
 
     // Time when get the notify. Used to check the 60s expires.
-    private long mNotifyTimeStamp = 0;
+    private volatile long mNotifyTimeStamp = 0;
+
+    // The result of addListener.
+    public static final int JOIN_REFUSED = 0;
+    // Joined before the SIP response, the listener gets the response with the others.
+    public static final int JOINED = 1;
+    // Joined after the 200 OK, the caller needs to send onSuccess to the listener.
+    public static final int JOINED_ACCEPTED = 2;
+
+    // The listeners of all the requests which share the SUBSCRIBE of this task.
+    private final ArrayList<IRcsPresenceListener> mListeners =
+            new ArrayList<IRcsPresenceListener>();
+
+    // Set after got the 200 OK of the SUBSCRIBE.
+    private boolean mAccepted = false;
+
+    // Set after got the NOTIFY, the error or the timeout. No request can share the task then.
+    private boolean mCompleted = false;
 
     public PresenceAvailabilityTask(int taskId, int cmdId, IRcsPresenceListener listener,
             String[] contacts){
@@ -69,9 +86,65 @@ public class PresenceAvailabilityTask extends PresenceTask{
 
         mCreateTimestamp = System.currentTimeMillis();
         mNotifyTimeStamp = 0;
+        if(listener != null){
+            mListeners.add(listener);
+        }
     }
 
-    public void updateNotifyTimestamp() {
+    /**
+     * Attaches the listener of another request for the same contact. The request can share
+     * the task until the NOTIFY or the final error.
+     *
+     * @return JOIN_REFUSED, JOINED or JOINED_ACCEPTED.
+     */
+    public synchronized int addListener(IRcsPresenceListener listener) {
+        if(mCompleted){
+            return JOIN_REFUSED;
+        }
+
+        if(listener != null && !mListeners.contains(listener)){
+            mListeners.add(listener);
+        }
+
+        logger.debug("addListener taskId=" + mTaskId + " listeners=" + mListeners.size() +
+                " mAccepted=" + mAccepted);
+        return mAccepted ? JOINED_ACCEPTED : JOINED;
+    }
+
+    /**
+     * Got the 200 OK, the task keeps accepting the listeners till the NOTIFY.
+     *
+     * @return the listeners which need to get the success.
+     */
+    public synchronized List<IRcsPresenceListener> onAccepted() {
+        mAccepted = true;
+        return new ArrayList<IRcsPresenceListener>(mListeners);
+    }
+
+    /**
+     * Got the final error or the timeout.
+     *
+     * @return the listeners which need to get the result.
+     */
+    public synchronized List<IRcsPresenceListener> onResponse() {
+        mCompleted = true;
+        return new ArrayList<IRcsPresenceListener>(mListeners);
+    }
+
+    // Didn't get the NOTIFY in the cache window.
+    public void onTimeout() {
+        logger.debug("onTimeout, taskId=" + mTaskId);
+        for(IRcsPresenceListener listener : onResponse()){
+            try{
+                listener.onTimeout(mTaskId);
+            }catch (RemoteException e){
+                logger.error("RemoteException", e);
+            }
+        }
+    }
+
+    public synchronized void updateNotifyTimestamp() {
+        mCompleted = true;
         mNotifyTimeStamp = System.currentTimeMillis();
         logger.debug("updateNotifyTimestamp mNotifyTimeStamp=" + mNotifyTimeStamp);
     }
@@ -84,6 +157,16 @@ public class PresenceAvailabilityTask extends PresenceTask{
         return mCreateTimestamp;
     }
 
+    // The cache window starts from the notify time, or the create time before got the notify.
+    public long getStartTimestamp() {
+        long notifyTimestamp = mNotifyTimeStamp;
+        return notifyTimestamp != 0 ? notifyTimestamp : mCreateTimestamp;
+    }
+
+    public boolean isExpired(long availabilityExpire, long currentTime) {
+        return getStartTimestamp() + availabilityExpire < currentTime;
+    }
+
     public String toString(){
         return super.toString() +
                 " mNotifyTimeStamp=" + mNotifyTimeStamp;
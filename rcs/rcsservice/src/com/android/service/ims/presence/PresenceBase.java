@@ -29,6 +29,7 @@
 package com.android.service.ims.presence;
 
 import java.lang.String;
+import java.util.List;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
@@ -46,6 +47,7 @@ import com.android.ims.internal.uce.presence.PresSipResponse;
 import com.android.ims.RcsManager.ResultCode;
 import com.android.ims.RcsPresence.PublishState;
 import com.android.ims.RcsPresenceInfo;
+import com.android.ims.IRcsPresenceListener;
 
 import com.android.ims.internal.Logger;
 import com.android.service.ims.Task;
@@ -69,18 +71,23 @@ public abstract class PresenceBase{
             return;
         }
 
-        if(task.mListener != null){
-            try{
-                if(resultCode >= ResultCode.SUCCESS){
-                    if(!forCmdStatus){
-                        task.mListener.onSuccess(task.mTaskId);
-                    }
-                }else{
-                    task.mListener.onError(task.mTaskId, resultCode);
+        if(task instanceof PresenceAvailabilityTask){
+            // Fan out to all the requests which share the SUBSCRIBE.
+            List<IRcsPresenceListener> listeners = null;
+            if(resultCode < ResultCode.SUCCESS){
+                listeners = ((PresenceAvailabilityTask)task).onResponse();
+            }else if(!forCmdStatus){
+                // More requests can join till the NOTIFY.
+                listeners = ((PresenceAvailabilityTask)task).onAccepted();
+            }
+
+            if(listeners != null){
+                for(IRcsPresenceListener listener : listeners){
+                    notifyListener(listener, task.mTaskId, resultCode, forCmdStatus);
                 }
-            }catch(RemoteException e){
-                logger.debug("Failed to send the status to client.");
             }
+        }else{
+            notifyListener(task.mListener, task.mTaskId, resultCode, forCmdStatus);
         }
 
         // remove task when error
@@ -131,6 +138,25 @@ public abstract class PresenceBase{
         }
     }
 
+    private void notifyListener(IRcsPresenceListener listener, int taskId, int resultCode,
+            boolean forCmdStatus){
+        if(listener == null){
+            return;
+        }
+
+        try{
+            if(resultCode >= ResultCode.SUCCESS){
+                if(!forCmdStatus){
+                    listener.onSuccess(taskId);
+                }
+            }else{
+                listener.onError(taskId, resultCode);
+            }
+        }catch(RemoteException e){
+            logger.debug("Failed to send the status to client.");
+        }
+    }
+
     public void handleCmdStatus(PresCmdStatus pCmdStatus){
         if(pCmdStatus == null){
             logger.error("handleCallbackForCmdStatus pCmdStatus=null");
@@ -140,7 +166,7 @@ public abstract class PresenceBase{
         Task task = TaskManager.getDefault().getTask(pCmdStatus.getUserData());
         int resultCode = RcsUtils.statusCodeToResultCode(pCmdStatus.getStatus().getStatusCode());
         if(task != null){
-            task.mSipRequestId = pCmdStatus.getRequestId();
+            TaskManager.getDefault().setSipRequestId(task, pCmdStatus.getRequestId());
             task.mCmdStatus = resultCode;
             TaskManager.getDefault().putTask(task.mTaskId, task);
         }
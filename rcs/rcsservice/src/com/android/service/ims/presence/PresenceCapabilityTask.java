@@ -33,12 +33,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
 import android.content.Context;
-import android.content.Intent;
-import android.app.PendingIntent;
 import android.content.IntentFilter;
 import android.os.RemoteException;
-import android.app.AlarmManager;
-import android.os.SystemClock;
 
 import com.android.ims.internal.uce.presence.PresCmdStatus;
 
@@ -58,17 +54,11 @@ public class PresenceCapabilityTask extends PresenceTask{
      */
     private Logger logger = Logger.getLogger(this.getClass().getName());
 
-    public static final String ACTION_TASK_TIMEOUT_ALARM =
-            "com.android.service.ims.presence.task.timeout";
-
     private Context mContext = null;
 
     // The result code will be used for retry.
     public int mResultCode;
 
-    // The alarm manager.
-    static AlarmManager sAlarmManager = null;
-    PendingIntent mAlarmIntent = null;
     boolean mTimerStarted = false;
 
     // it will be set to true after got sip response.
@@ -79,6 +69,9 @@ public class PresenceCapabilityTask extends PresenceTask{
 
     private long mTimeout;
 
+    // The times it was resent for the temporary error.
+    private int mRetryCount = 0;
+
     public PresenceCapabilityTask(Context context, int taskId, int cmdId,
             IRcsPresenceListener listener, String[] contacts,
             long timeout){
@@ -105,7 +98,24 @@ public class PresenceCapabilityTask extends PresenceTask{
     public String toString(){
         return super.toString() +
                 " mCreatedTimeStamp=" + mCreatedTimeStamp +
-                " mTimeout=" + mTimeout;
+                " mTimeout=" + mTimeout +
+                " mRetryCount=" + mRetryCount;
+    }
+
+    public int getRetryCount() {
+        return mRetryCount;
+    }
+
+    public void setRetryCount(int retryCount) {
+        mRetryCount = retryCount;
+    }
+
+    // Starts the timer again when the task is resent.
+    public void restartTimer(){
+        cancelTimer();
+        if(mListener != null){
+            startTimer();
+        }
     }
 
     private void startTimer(){
@@ -114,29 +124,15 @@ public class PresenceCapabilityTask extends PresenceTask{
             return;
         }
 
-        Intent intent = new Intent(ACTION_TASK_TIMEOUT_ALARM);
-        intent.setClass(mContext, AlarmBroadcastReceiver.class);
-        intent.putExtra("taskId", mTaskId);
-        PendingIntent mAlarmIntent = PendingIntent.getBroadcast(mContext, 0, intent,
-                PendingIntent.FLAG_ONE_SHOT);
-
-        if(sAlarmManager == null){
-            sAlarmManager = (AlarmManager)mContext.getSystemService(Context.ALARM_SERVICE);
-        }
-
-        long triggerAt = SystemClock.elapsedRealtime() + mTimeout;
-        logger.debug("startTimer taskId=" + mTaskId + " mTimeout=" + mTimeout +
-                " triggerAt=" + triggerAt + " mAlarmIntent=" + mAlarmIntent);
-        sAlarmManager.setExact(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerAt, mAlarmIntent);
+        logger.debug("startTimer taskId=" + mTaskId + " mTimeout=" + mTimeout);
+        TaskManager.getDefault().startTimeoutTimer(mContext, mTaskId, mTimeout);
         mTimerStarted = true;
     }
 
     public void cancelTimer(){
         if(mTimerStarted){
             logger.debug("cancelTimer, taskId=" + mTaskId);
-            if(mAlarmIntent != null && sAlarmManager != null) {
-                sAlarmManager.cancel(mAlarmIntent);
-            }
+            TaskManager.getDefault().cancelTimeoutTimer(mTaskId);
             mTimerStarted = false;
         }
     }
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.service.ims.presence;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import com.android.ims.RcsPresenceInfo;
+import com.android.ims.internal.Logger;
+import com.android.service.ims.TaskManager;
+
+/**
+ * Buffers the presence results of the NOTIFYs and passes them to PersistService in batches.
+ *
+ * The results of the same contact are coalesced by the formatted number, the latest one wins
+ * but keeps the newest timestamp of each service. The batch is delivered when it has
+ * MAX_BATCH_SIZE contacts, when FLUSH_WINDOW_MS passed since its first result, or when the
+ * subscription is terminated. The results with a different updateLastTimestamp go into the
+ * next batch so the order is kept. The batches are sent in order on the looper, not under the
+ * lock.
+ */
+public class PresenceInfoAggregator {
+    /*
+     * The logger
+     */
+    private Logger logger = Logger.getLogger(this.getClass().getName());
+
+    private static final int MAX_BATCH_SIZE = 100;
+
+    private static final long FLUSH_WINDOW_MS = 200;
+
+    public interface Sender {
+        void send(ArrayList<RcsPresenceInfo> presenceInfoList, boolean updateLastTimestamp);
+    }
+
+    private final Handler mHandler;
+    private final Sender mSender;
+
+    // The results in the current batch, keyed by the formatted contact number.
+    private LinkedHashMap<String, RcsPresenceInfo> mPendingInfos =
+            new LinkedHashMap<String, RcsPresenceInfo>();
+    private boolean mUpdateLastTimestamp = true;
+
+    private final Runnable mFlushRunnable = () -> flush();
+
+    public PresenceInfoAggregator(Looper looper, Sender sender) {
+        mHandler = new Handler(looper);
+        mSender = sender;
+    }
+
+    /**
+     * Adds the results to the current batch.
+     *
+     * @param terminated the subscription is done, so deliver the batch at once.
+     */
+    public void add(List<RcsPresenceInfo> presenceInfoList, boolean updateLastTimestamp,
+            boolean terminated) {
+        boolean flushNow = terminated;
+        synchronized (this) {
+            if (!mPendingInfos.isEmpty() && mUpdateLastTimestamp != updateLastTimestamp) {
+                // Keep the order with the results of the other kind.
+                flushLocked();
+            }
+            mUpdateLastTimestamp = updateLastTimestamp;
+
+            boolean wasEmpty = mPendingInfos.isEmpty();
+            for (RcsPresenceInfo presenceInfo : presenceInfoList) {
+                String contact = TaskManager.getContactKey(presenceInfo.getContactNumber());
+                mPendingInfos.put(contact, merge(mPendingInfos.remove(contact), presenceInfo));
+            }
+
+            if (mPendingInfos.size() >= MAX_BATCH_SIZE) {
+                flushNow = true;
+            } else if (wasEmpty && !mPendingInfos.isEmpty() && !flushNow) {
+                mHandler.postDelayed(mFlushRunnable, FLUSH_WINDOW_MS);
+            }
+
+            if (flushNow) {
+                flushLocked();
+            }
+        }
+    }
+
+    private static RcsPresenceInfo merge(RcsPresenceInfo oldInfo, RcsPresenceInfo newInfo) {
+        if (oldInfo == null) {
+            return newInfo;
+        }
+
+        long volteTimestamp = Math.max(
+                oldInfo.getTimeStamp(RcsPresenceInfo.ServiceType.VOLTE_CALL),
+                newInfo.getTimeStamp(RcsPresenceInfo.ServiceType.VOLTE_CALL));
+        long vtTimestamp = Math.max(
+                oldInfo.getTimeStamp(RcsPresenceInfo.ServiceType.VT_CALL),
+                newInfo.getTimeStamp(RcsPresenceInfo.ServiceType.VT_CALL));
+
+        return new RcsPresenceInfo(newInfo.getContactNumber(), newInfo.getVolteStatus(),
+                newInfo.getServiceState(RcsPresenceInfo.ServiceType.VOLTE_CALL),
+                newInfo.getServiceContact(RcsPresenceInfo.ServiceType.VOLTE_CALL),
+                volteTimestamp,
+                newInfo.getServiceState(RcsPresenceInfo.ServiceType.VT_CALL),
+                newInfo.getServiceContact(RcsPresenceInfo.ServiceType.VT_CALL),
+                vtTimestamp);
+    }
+
+    public synchronized void flush() {
+        flushLocked();
+    }
+
+    private void flushLocked() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        if (mPendingInfos.isEmpty()) {
+            return;
+        }
+
+        ArrayList<RcsPresenceInfo> batch =
+                new ArrayList<RcsPresenceInfo>(mPendingInfos.values());
+        mPendingInfos = new LinkedHashMap<String, RcsPresenceInfo>();
+
+        boolean updateLastTimestamp = mUpdateLastTimestamp;
+
+        logger.debug("flush size=" + batch.size() +
+                " updateLastTimestamp=" + updateLastTimestamp);
+
+        // The sender calls PersistService. Post it under the lock so the batches keep the order.
+        mHandler.post(() -> mSender.send(batch, updateLastTimestamp));
+    }
+}
@@ -30,7 +30,14 @@ package com.android.service.ims.presence;
 
 import java.lang.String;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import android.content.Context;
+import android.content.res.Resources;
 import android.text.TextUtils;
 
 import com.android.ims.internal.uce.presence.PresTupleInfo;
@@ -44,6 +51,7 @@ import com.android.ims.RcsPresenceInfo.ServiceType;
 import com.android.ims.RcsPresenceInfo.ServiceState;
 
 import com.android.ims.internal.Logger;
+import com.android.service.ims.R;
 
 public class PresenceInfoParser{
     /*
@@ -51,11 +59,148 @@ public class PresenceInfoParser{
      */
     static private Logger logger = Logger.getLogger("PresenceInfoParser");
 
+    // The capabilities which a feature tag indicates.
+    static private final int CAPABILITY_NONE = 0;
+    static private final int CAPABILITY_VOICE_CALL = 1;
+    static private final int CAPABILITY_VIDEO_CALL = 1 << 1;
+
+    // The feature tags which are supported by default, the carrier can add more by the
+    // config_*_feature_tags resources.
+    static private final String[] DEFAULT_VOLTE_VT_FEATURE_TAGS = {
+        "+g.3gpp.icsi-ref=\"urn%3Aurn-7%3A3gpp-service.ims.icsi.mmtel\";video",
+        "+g.gsma.rcs.telephony=\"cs,volte\";video"};
+    static private final String[] DEFAULT_VT_FEATURE_TAGS = {
+        "+g.gsma.rcs.telephony=\"cs\";video"};
+    static private final String[] DEFAULT_VOLTE_FEATURE_TAGS = {
+        "+g.3gpp.icsi-ref=\"urn%3Aurn-7%3A3gpp-service.ims.icsi.mmtel\"",
+        "+g.gsma.rcs.telephony=\"cs,volte\""};
+
+    // The capabilities keyed by the canonical feature tag.
+    static private HashMap<String, Integer> sCapabilityTable = createDefaultCapabilityTable();
+
+    // The capabilities keyed by the feature tag as it was received, so a known tag is looked
+    // up without being canonicalized again. The unknown tags are cached as CAPABILITY_NONE.
+    static private final int MAX_RECEIVED_FEATURE_TAGS = 64;
+    static private final HashMap<String, Integer> sReceivedFeatureTags =
+            new HashMap<String, Integer>();
+
     public PresenceInfoParser() {
     }
 
+    /**
+     * Adds the feature tags of the carrier to the capability table.
+     */
+    static public void loadFeatureTags(Context context) {
+        if(context == null){
+            return;
+        }
+
+        HashMap<String, Integer> capabilityTable = createDefaultCapabilityTable();
+        Resources resources = context.getResources();
+        addFeatureTags(capabilityTable,
+                resources.getStringArray(R.array.config_volte_vt_feature_tags),
+                CAPABILITY_VOICE_CALL | CAPABILITY_VIDEO_CALL);
+        addFeatureTags(capabilityTable,
+                resources.getStringArray(R.array.config_vt_feature_tags),
+                CAPABILITY_VIDEO_CALL);
+        addFeatureTags(capabilityTable,
+                resources.getStringArray(R.array.config_volte_feature_tags),
+                CAPABILITY_VOICE_CALL);
+
+        synchronized(PresenceInfoParser.class){
+            sCapabilityTable = capabilityTable;
+            sReceivedFeatureTags.clear();
+        }
+        logger.debug("loadFeatureTags size=" + capabilityTable.size());
+    }
+
+    static private HashMap<String, Integer> createDefaultCapabilityTable() {
+        HashMap<String, Integer> capabilityTable = new HashMap<String, Integer>();
+        addFeatureTags(capabilityTable, DEFAULT_VOLTE_VT_FEATURE_TAGS,
+                CAPABILITY_VOICE_CALL | CAPABILITY_VIDEO_CALL);
+        addFeatureTags(capabilityTable, DEFAULT_VT_FEATURE_TAGS, CAPABILITY_VIDEO_CALL);
+        addFeatureTags(capabilityTable, DEFAULT_VOLTE_FEATURE_TAGS, CAPABILITY_VOICE_CALL);
+        return capabilityTable;
+    }
+
+    static private void addFeatureTags(HashMap<String, Integer> capabilityTable,
+            String[] featureTags, int capabilities){
+        if(featureTags == null){
+            return;
+        }
+
+        for(String featureTag : featureTags){
+            if(!TextUtils.isEmpty(featureTag)){
+                capabilityTable.put(canonicalizeFeatureTag(featureTag), capabilities);
+            }
+        }
+    }
+
+    /**
+     * Makes the same string for the variants of a feature tag. The parameters and the values
+     * of a parameter are sorted, the quotes are removed and "%3A" is decoded.
+     */
+    static String canonicalizeFeatureTag(String featureTag) {
+        String[] params = featureTag.toLowerCase(Locale.ROOT).split(";");
+        ArrayList<String> canonicalParams = new ArrayList<String>(params.length);
+        for(String param : params){
+            param = param.trim();
+            if(param.isEmpty()){
+                continue;
+            }
+
+            int index = param.indexOf('=');
+            if(index == -1){
+                canonicalParams.add(param);
+                continue;
+            }
+
+            String value = param.substring(index + 1).trim();
+            if(value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")){
+                value = value.substring(1, value.length() - 1);
+            }
+
+            String[] values = value.replace("%3a", ":").split(",");
+            for(int i = 0; i < values.length; i++){
+                values[i] = values[i].trim();
+            }
+            Arrays.sort(values);
+
+            canonicalParams.add(param.substring(0, index).trim() + "=" +
+                    TextUtils.join(",", values));
+        }
+
+        Collections.sort(canonicalParams);
+        return TextUtils.join(";", canonicalParams);
+    }
+
+    static synchronized private int getCapabilities(String featureTag) {
+        Integer capabilities = sReceivedFeatureTags.get(featureTag);
+        if(capabilities != null){
+            return capabilities;
+        }
+
+        capabilities = sCapabilityTable.get(canonicalizeFeatureTag(featureTag));
+        if(capabilities == null){
+            capabilities = CAPABILITY_NONE;
+        }
+
+        if(sReceivedFeatureTags.size() >= MAX_RECEIVED_FEATURE_TAGS){
+            sReceivedFeatureTags.clear();
+        }
+        sReceivedFeatureTags.put(featureTag, capabilities);
+
+        return capabilities;
+    }
+
     static public RcsPresenceInfo getPresenceInfoFromTuple(String pPresentityURI,
             PresTupleInfo[] pTupleInfo){
+        // We use the timestamp which when we received it instead of the one in PDU
+        return getPresenceInfoFromTuple(pPresentityURI, pTupleInfo, System.currentTimeMillis());
+    }
+
+    static private RcsPresenceInfo getPresenceInfoFromTuple(String pPresentityURI,
+            PresTupleInfo[] pTupleInfo, long timestamp){
         logger.debug("getPresenceInfoFromTuple: pPresentityURI=" + pPresentityURI +
                 " pTupleInfo=" + pTupleInfo);
 
@@ -71,114 +216,116 @@ public class PresenceInfoParser{
 
         int ipVoiceCallState = RcsPresenceInfo.ServiceState.UNKNOWN;
         String ipVoiceCallServiceNumber = null;
-         // We use the timestamp which when we received it instead of the one in PDU
-        long ipVoiceCallTimestamp = System.currentTimeMillis();
 
         int ipVideoCallState = RcsPresenceInfo.ServiceState.UNKNOWN;
         String ipVideoCallServiceNumber = null;
-        long ipVideoCallTimestamp = System.currentTimeMillis();
 
         if( pTupleInfo == null){
             logger.debug("pTupleInfo=null");
             return (new RcsPresenceInfo(contactNumber, volteStatus,
-                ipVoiceCallState, ipVoiceCallServiceNumber, ipVoiceCallTimestamp,
-                ipVideoCallState, ipVideoCallServiceNumber, ipVideoCallTimestamp));
+                ipVoiceCallState, ipVoiceCallServiceNumber, timestamp,
+                ipVideoCallState, ipVideoCallServiceNumber, timestamp));
         }
 
         for(int i = 0; i < pTupleInfo.length; i++){
-            // Video call has high priority. If it supports video call it will support voice call.
             String featureTag = pTupleInfo[i].getFeatureTag();
-            logger.debug("getFeatureTag " + i + ": " + featureTag);
-            if(featureTag.equals(
-                "+g.3gpp.icsi-ref=\"urn%3Aurn-7%3A3gpp-service.ims.icsi.mmtel\";video") ||
-                featureTag.equals("+g.gsma.rcs.telephony=\"cs,volte\";video")) {
-                logger.debug("Got Volte and VT enabled tuple");
-                ipVoiceCallState = RcsPresenceInfo.ServiceState.ONLINE;
+            int capabilities = featureTag == null ? CAPABILITY_NONE : getCapabilities(featureTag);
+            logger.debug("getFeatureTag " + i + ": " + featureTag +
+                    " capabilities=" + capabilities);
+
+            // Video call has high priority. If it supports video call it will support voice call.
+            if((capabilities & CAPABILITY_VIDEO_CALL) != 0){
+                ipVoiceCallState = (capabilities & CAPABILITY_VOICE_CALL) != 0 ?
+                        RcsPresenceInfo.ServiceState.ONLINE : RcsPresenceInfo.ServiceState.OFFLINE;
                 ipVideoCallState = RcsPresenceInfo.ServiceState.ONLINE;
 
                 if(pTupleInfo[i].getContactUri() != null){
                     ipVideoCallServiceNumber = getPhoneFromUri(
                             pTupleInfo[i].getContactUri().toString());
                 }
-            } else if(featureTag.equals("+g.gsma.rcs.telephony=\"cs\";video")) {
-                logger.debug("Got Volte disabled but VT enabled tuple");
-                ipVoiceCallState = RcsPresenceInfo.ServiceState.OFFLINE;
-                ipVideoCallState = RcsPresenceInfo.ServiceState.ONLINE;
+            }else if((capabilities & CAPABILITY_VOICE_CALL) != 0){
+                ipVoiceCallState = RcsPresenceInfo.ServiceState.ONLINE;
+                // "OR" for multiple tuples.
+                if(RcsPresenceInfo.ServiceState.UNKNOWN == ipVideoCallState) {
+                    ipVideoCallState = RcsPresenceInfo.ServiceState.OFFLINE;
+                }
 
                 if(pTupleInfo[i].getContactUri() != null){
-                    ipVideoCallServiceNumber = getPhoneFromUri(
+                    ipVoiceCallServiceNumber = getPhoneFromUri(
                             pTupleInfo[i].getContactUri().toString());
                 }
             }else{
-                if(featureTag.equals(
-                    "+g.3gpp.icsi-ref=\"urn%3Aurn-7%3A3gpp-service.ims.icsi.mmtel\"") ||
-                    featureTag.equals("+g.gsma.rcs.telephony=\"cs,volte\"")) {
-
-                    logger.debug("Got Volte only tuple");
-                    ipVoiceCallState = RcsPresenceInfo.ServiceState.ONLINE;
-                    // "OR" for multiple tuples.
-                    if(RcsPresenceInfo.ServiceState.UNKNOWN == ipVideoCallState) {
-                        ipVideoCallState = RcsPresenceInfo.ServiceState.OFFLINE;
-                    }
-
-                    if(pTupleInfo[i].getContactUri() != null){
-                        ipVoiceCallServiceNumber = getPhoneFromUri(
-                                pTupleInfo[i].getContactUri().toString());
-                    }
-                }else{
-                    logger.debug("Ignoring feature tag: " + pTupleInfo[i].getFeatureTag());
-                }
-           }
+                logger.debug("Ignoring feature tag: " + featureTag);
+            }
         }
 
         RcsPresenceInfo retPresenceInfo = new RcsPresenceInfo(contactNumber,volteStatus,
-                ipVoiceCallState, ipVoiceCallServiceNumber, ipVoiceCallTimestamp,
-                ipVideoCallState, ipVideoCallServiceNumber, ipVideoCallTimestamp);
+                ipVoiceCallState, ipVoiceCallServiceNumber, timestamp,
+                ipVideoCallState, ipVideoCallServiceNumber, timestamp);
 
         logger.debug("getPresenceInfoFromTuple: " + retPresenceInfo);
 
         return retPresenceInfo;
     }
 
-    static private void addPresenceInfo(ArrayList<RcsPresenceInfo> presenceInfoList,
-            RcsPresenceInfo presenceInfo){
-        logger.debug("addPresenceInfo presenceInfoList=" + presenceInfoList +
-                    " presenceInfo=" + presenceInfo);
+    /**
+     * Merges the presence information of the same contact from several resources in place.
+     * The service is ONLINE if any of the resources says so, the other fields are taken from
+     * the first resource.
+     */
+    private static final class MergedPresenceInfo {
+        private final RcsPresenceInfo mFirst;
+        private boolean mMerged = false;
 
-        if(presenceInfoList == null || presenceInfo == null){
-            logger.debug("addPresenceInfo presenceInfoList=" + presenceInfoList +
-                    " presenceInfo=" + presenceInfo);
-            return;
+        private int mVoiceCallState;
+        private int mVideoCallState;
+
+        MergedPresenceInfo(RcsPresenceInfo presenceInfo) {
+            mFirst = presenceInfo;
+            mVoiceCallState = presenceInfo.getServiceState(ServiceType.VOLTE_CALL);
+            mVideoCallState = presenceInfo.getServiceState(ServiceType.VT_CALL);
         }
 
-        for(int i=0; i< presenceInfoList.size(); i++){
-            RcsPresenceInfo presenceInfoTmp = presenceInfoList.get(i);
-            if((presenceInfoTmp != null) && (presenceInfoTmp.getContactNumber() != null) &&
-                    presenceInfoTmp.getContactNumber().equalsIgnoreCase(
-                    presenceInfo.getContactNumber())){
-                // merge the information
-                presenceInfoList.set(i, new RcsPresenceInfo(presenceInfoTmp.getContactNumber(),
-                        presenceInfoTmp.getVolteStatus(),
-                        ((ServiceState.ONLINE == presenceInfo.getServiceState(
-                                ServiceType.VOLTE_CALL)) ||
-                                (ServiceState.ONLINE == presenceInfoTmp.getServiceState(
-                                ServiceType.VOLTE_CALL)))?ServiceState.ONLINE:
-                                    presenceInfoTmp.getServiceState(ServiceType.VOLTE_CALL),
-                        presenceInfoTmp.getServiceContact(ServiceType.VOLTE_CALL),
-                        presenceInfoTmp.getTimeStamp(ServiceType.VOLTE_CALL),
-                        ((ServiceState.ONLINE == presenceInfo.getServiceState(
-                                ServiceType.VT_CALL)) ||
-                                (ServiceState.ONLINE == presenceInfoTmp.getServiceState(
-                                ServiceType.VT_CALL)))?ServiceState.ONLINE:
-                                    presenceInfoTmp.getServiceState(ServiceType.VT_CALL),
-                        presenceInfoTmp.getServiceContact(ServiceType.VOLTE_CALL),
-                        presenceInfoTmp.getTimeStamp(ServiceType.VOLTE_CALL)));
-                return;
+        void merge(RcsPresenceInfo presenceInfo) {
+            mMerged = true;
+            if(ServiceState.ONLINE == presenceInfo.getServiceState(ServiceType.VOLTE_CALL)){
+                mVoiceCallState = ServiceState.ONLINE;
+            }
+            if(ServiceState.ONLINE == presenceInfo.getServiceState(ServiceType.VT_CALL)){
+                mVideoCallState = ServiceState.ONLINE;
             }
         }
 
+        RcsPresenceInfo get() {
+            if(!mMerged){
+                return mFirst;
+            }
+
+            return new RcsPresenceInfo(mFirst.getContactNumber(), mFirst.getVolteStatus(),
+                    mVoiceCallState, mFirst.getServiceContact(ServiceType.VOLTE_CALL),
+                    mFirst.getTimeStamp(ServiceType.VOLTE_CALL),
+                    mVideoCallState, mFirst.getServiceContact(ServiceType.VT_CALL),
+                    mFirst.getTimeStamp(ServiceType.VT_CALL));
+        }
+    }
+
+    static private void addPresenceInfo(HashMap<String, MergedPresenceInfo> presenceInfoMap,
+            RcsPresenceInfo presenceInfo){
+        if(presenceInfo == null || presenceInfo.getContactNumber() == null){
+            logger.debug("addPresenceInfo presenceInfo=" + presenceInfo);
+            return;
+        }
+
+        // The contact numbers are compared ignoring case.
+        String key = presenceInfo.getContactNumber().toLowerCase(Locale.ROOT);
+        MergedPresenceInfo mergedPresenceInfo = presenceInfoMap.get(key);
+        if(mergedPresenceInfo != null){
+            mergedPresenceInfo.merge(presenceInfo);
+            return;
+        }
+
         // didn't merge, so add the new one.
-        presenceInfoList.add(presenceInfo);
+        presenceInfoMap.put(key, new MergedPresenceInfo(presenceInfo));
     }
 
     static public RcsPresenceInfo[] getPresenceInfosFromPresenceRes(
@@ -188,7 +335,12 @@ public class PresenceInfoParser{
             return null;
         }
 
-        ArrayList<RcsPresenceInfo> presenceInfoList = new ArrayList<RcsPresenceInfo>();
+        // We use the timestamp which when we received it instead of the one in PDU
+        long timestamp = System.currentTimeMillis();
+
+        // Keeps the order of the resources.
+        LinkedHashMap<String, MergedPresenceInfo> presenceInfoMap =
+                new LinkedHashMap<String, MergedPresenceInfo>();
         for(int i=0; i < pRcsPresenceInfo.length; i++ ) {
             if(pRcsPresenceInfo[i].getInstanceInfo() == null){
                 logger.error("invalid data getInstanceInfo = null");
@@ -221,11 +373,9 @@ public class PresenceInfoParser{
                     if(reason.equals("rejected") || reason.equals("noresource")){
                         RcsPresenceInfo presenceInfo = new RcsPresenceInfo(contactNumber,
                                 RcsPresenceInfo.VolteStatus.VOLTE_DISABLED,
-                                RcsPresenceInfo.ServiceState.OFFLINE, null,
-                                System.currentTimeMillis(),
-                                RcsPresenceInfo.ServiceState.OFFLINE, null,
-                                System.currentTimeMillis());
-                        addPresenceInfo(presenceInfoList, presenceInfo);
+                                RcsPresenceInfo.ServiceState.OFFLINE, null, timestamp,
+                                RcsPresenceInfo.ServiceState.OFFLINE, null, timestamp);
+                        addPresenceInfo(presenceInfoMap, presenceInfo);
                         logger.debug("reason=" + reason + " presenceInfo=" + presenceInfo);
                         continue;
                     }
@@ -233,22 +383,28 @@ public class PresenceInfoParser{
             }
 
             RcsPresenceInfo presenceInfo = getPresenceInfoFromTuple(resUri,
-                    pRcsPresenceInfo[i].getInstanceInfo().getTupleInfo());
+                    pRcsPresenceInfo[i].getInstanceInfo().getTupleInfo(), timestamp);
             if(presenceInfo != null){
-                addPresenceInfo(presenceInfoList, presenceInfo);
+                addPresenceInfo(presenceInfoMap, presenceInfo);
             }else{
                 logger.debug("presenceInfo["+ i + "] = null");
-                addPresenceInfo(presenceInfoList, getPresenceInfoFromTuple(resUri, null));
+                addPresenceInfo(presenceInfoMap, getPresenceInfoFromTuple(resUri, null, timestamp));
             }
         }
 
-        logger.debug("getPresenceInfoFromPresenceRes, presenceInfos:" + presenceInfoList);
-        if(presenceInfoList.size() == 0){
+        if(presenceInfoMap.size() == 0){
+            logger.debug("getPresenceInfoFromPresenceRes, no presenceInfo");
             return null;
         }
 
-        RcsPresenceInfo[] theArray = new RcsPresenceInfo[presenceInfoList.size()];
-        return (RcsPresenceInfo[])presenceInfoList.toArray(theArray);
+        RcsPresenceInfo[] theArray = new RcsPresenceInfo[presenceInfoMap.size()];
+        int index = 0;
+        for(MergedPresenceInfo mergedPresenceInfo : presenceInfoMap.values()){
+            theArray[index++] = mergedPresenceInfo.get();
+        }
+
+        logger.debug("getPresenceInfoFromPresenceRes, presenceInfos.length=" + theArray.length);
+        return theArray;
     }
 
     static public String getPhoneFromUri(String uriValue) {
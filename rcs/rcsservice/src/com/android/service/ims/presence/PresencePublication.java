@@ -67,6 +67,7 @@ import com.android.ims.RcsPresence.PublishState;
 
 import com.android.ims.internal.Logger;
 import com.android.service.ims.TaskManager;
+import com.android.service.ims.TelephonyStateCache;
 import com.android.service.ims.Task;
 
 import com.android.ims.internal.uce.presence.PresPublishTriggerType;
@@ -208,9 +209,12 @@ public class PresencePublication extends PresenceBase {
                                 int count = 0;
                                 // retry 2 minutes to get the information from ISIM and RUIM
                                 for(int i=0; i<60; i++) {
-                                     String[] myImpu = teleMgr.getIsimImpu();
-                                     String myDomain = teleMgr.getIsimDomain();
-                                     String line1Number = teleMgr.getLine1Number();
+                                     // Update the cached snapshot with the loaded records.
+                                     TelephonyStateCache.Snapshot snapshot =
+                                             TelephonyStateCache.getInstance(mContext).refresh();
+                                     String[] myImpu = snapshot.getIsimImpu();
+                                     String myDomain = snapshot.getIsimDomain();
+                                     String line1Number = snapshot.getLine1Number();
                                      if(line1Number != null && line1Number.length() != 0 ||
                                          myImpu != null && myImpu.length != 0 &&
                                          myDomain != null && myDomain.length() != 0){
@@ -908,14 +912,8 @@ public class PresencePublication extends PresenceBase {
              return;
         }
 
-        TelephonyManager teleMgr = (TelephonyManager) mContext.getSystemService(
-                Context.TELEPHONY_SERVICE);
-        if(teleMgr ==null) {
-             logger.debug("teleMgr=null");
-             return;
-         }
-
-        RcsPresenceInfo presenceInfo = new RcsPresenceInfo(teleMgr.getLine1Number(),
+        RcsPresenceInfo presenceInfo = new RcsPresenceInfo(
+                TelephonyStateCache.getInstance(mContext).getSnapshot().getLine1Number(),
                 RcsPresenceInfo.VolteStatus.VOLTE_UNKNOWN,
                 publishRequest.getVolteCapable()?RcsPresenceInfo.ServiceState.ONLINE:
                         RcsPresenceInfo.ServiceState.OFFLINE, null, System.currentTimeMillis(),
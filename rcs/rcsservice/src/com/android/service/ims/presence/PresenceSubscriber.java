@@ -28,6 +28,7 @@
 
 package com.android.service.ims.presence;
 
+import java.io.PrintWriter;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Timer;
@@ -37,12 +38,13 @@ import android.content.ContentValues;
 import android.text.TextUtils;
 
 import android.content.BroadcastReceiver;
-import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import com.android.internal.telephony.TelephonyIntents;
+import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.Message;
 import android.os.RemoteException;
 import android.telephony.TelephonyManager;
 import android.database.Cursor;
@@ -68,7 +70,9 @@ import com.android.ims.RcsPresence.PublishState;
 
 import com.android.ims.internal.Logger;
 import com.android.ims.internal.ContactNumberUtils;
+import com.android.service.ims.PersistServiceConnection;
 import com.android.service.ims.TaskManager;
+import com.android.service.ims.TelephonyStateCache;
 import com.android.service.ims.Task;
 import com.android.service.ims.RcsStackAdaptor;
 import com.android.service.ims.RcsUtils;
@@ -88,18 +92,92 @@ public class PresenceSubscriber extends PresenceBase{
 
     private String mAvailabilityRetryNumber = null;
 
+    // The latest presence information from network, used to answer availability requests.
+    private AvailabilityCache mAvailabilityCache = new AvailabilityCache();
+
+    // The RCL size learned from "413 Too Large".
+    private RclSizeController mRclSizeController = null;
+
+    // The thread to resend and to batch the capability subscriptions.
+    private HandlerThread mWorkerThread = null;
+
+    // Resends the capability subscriptions which got the temporary error.
+    private SubscribeRetryScheduler mRetryScheduler = null;
+
+    // Sends the single contact capability requests as lists.
+    private CapabilityBatcher mCapabilityBatcher = null;
+
+    // Passes the presence results to PersistService in batches.
+    private PresenceInfoAggregator mPresenceInfoAggregator = null;
+
+    private static final int MESSAGE_CACHED_AVAILABILITY = 1;
+    private static final int MESSAGE_JOINED_AVAILABILITY = 2;
+
+    private class CachedAvailability{
+        int mTaskId;
+        IRcsPresenceListener mListener;
+        RcsPresenceInfo mPresenceInfo;
+    }
+
+    private Handler mMsgHandler = new Handler() {
+        @Override
+        public void handleMessage(Message msg) {
+            super.handleMessage(msg);
+
+            logger.debug( "Thread=" + Thread.currentThread().getName() + " received "
+                    + msg);
+            if(msg == null){
+                logger.error("msg=null");
+                return;
+            }
+
+            switch (msg.what) {
+                case MESSAGE_CACHED_AVAILABILITY:
+                    notifyCachedAvailability((CachedAvailability) msg.obj);
+                break;
+
+                case MESSAGE_JOINED_AVAILABILITY:
+                    try{
+                        ((IRcsPresenceListener) msg.obj).onSuccess(msg.arg1);
+                    }catch(RemoteException e){
+                        logger.debug("Failed to send the status to client.");
+                    }
+                break;
+
+                default:
+                    logger.debug("handleMessage unknown msg=" + msg.what);
+            }
+        }
+    };
+
     /*
      * Constructor
      */
     public PresenceSubscriber(RcsStackAdaptor rcsStackAdaptor, Context context){
         mRcsStackAdaptor = rcsStackAdaptor;
         mContext = context;
+
+        mRclSizeController = new RclSizeController(context);
+        PresenceInfoParser.loadFeatureTags(context);
+
+        mWorkerThread = new HandlerThread("PresenceSubscriber",
+                android.os.Process.THREAD_PRIORITY_BACKGROUND);
+        mWorkerThread.start();
+        mRetryScheduler = new SubscribeRetryScheduler(mWorkerThread.getLooper(),
+                task -> retryCapabilityTask(task));
+        mCapabilityBatcher = new CapabilityBatcher(mWorkerThread.getLooper(),
+                (formatedNumbers, batchListener) -> requestCapabilityInternal(formatedNumbers,
+                        batchListener));
+        mPresenceInfoAggregator = new PresenceInfoAggregator(mWorkerThread.getLooper(),
+                (presenceInfoList, updateLastTimestamp) -> sendPresenceInfos(presenceInfoList,
+                        updateLastTimestamp));
     }
 
     private String numberToUriString(String number){
         String formatedContact = number;
         if(!formatedContact.startsWith("sip:") && !formatedContact.startsWith("tel:")){
-            String domain = TelephonyManager.getDefault().getIsimDomain();
+            String domain = TelephonyStateCache.getInstance(mContext).getSnapshot()
+                    .getIsimDomain();
             logger.debug("domain=" + domain);
             if(domain == null || domain.length() ==0){
                 formatedContact = "tel:" + formatedContact;
@@ -136,13 +214,6 @@ public class PresenceSubscriber extends PresenceBase{
             return ret;
         }
 
-        logger.debug("check contact size ...");
-        if(contactsNumber.size() > RcsSettingUtils.getMaxNumbersInRCL(mContext)){
-            ret = ResultCode.SUBSCRIBE_TOO_LARGE;
-            logger.error("requestCapability contctNumber size=" + contactsNumber.size());
-            return ret;
-        }
-
         String[] formatedNumbers = ContactNumberUtils.getDefault().format(contactsNumber);
         ret = ContactNumberUtils.getDefault().validate(formatedNumbers);
         if(ret != ContactNumberUtils.NUMBER_VALID){
@@ -150,12 +221,64 @@ public class PresenceSubscriber extends PresenceBase{
             return ret;
         }
 
+        if(formatedNumbers.length == 1 && mCapabilityBatcher.isEnabled()){
+            int maxNumbersInRCL = getMaxNumbersInRCL();
+            if(maxNumbersInRCL > 1){
+                // Send it with the other single contact requests in the batch window.
+                return mCapabilityBatcher.add(formatedNumbers[0], listener, maxNumbersInRCL);
+            }
+        }
+
+        return requestCapabilityInternal(formatedNumbers, listener);
+    }
+
+    private int getMaxNumbersInRCL(){
+        int maxNumbersInRCL = RcsSettingUtils.getMaxNumbersInRCL(mContext);
+        if(maxNumbersInRCL <= 0){
+            return maxNumbersInRCL;
+        }
+
+        return mRclSizeController.getListSize(maxNumbersInRCL);
+    }
+
+    private int requestCapabilityInternal(String[] formatedNumbers,
+            IRcsPresenceListener listener){
+        logger.debug("check contact size ...");
+        int maxNumbersInRCL = getMaxNumbersInRCL();
+        if(maxNumbersInRCL <= 0){
+            logger.error("requestCapability maxNumbersInRCL=" + maxNumbersInRCL);
+            return ResultCode.SUBSCRIBE_TOO_LARGE;
+        }
+
+        if(formatedNumbers.length > maxNumbersInRCL){
+            // Subscribe the list by RCL sized chunks.
+            logger.print("requestCapability split contctNumber size=" + formatedNumbers.length +
+                    " maxNumbersInRCL=" + maxNumbersInRCL);
+            CapabilityListRequest listRequest = new CapabilityListRequest(
+                    TaskManager.getDefault().generateTaskId(), formatedNumbers, maxNumbersInRCL,
+                    listener, (chunk, chunkListener) -> sendCapabilityRequest(chunk,
+                            chunkListener));
+            return listRequest.start();
+        }
+
+        return sendCapabilityRequest(formatedNumbers, listener);
+    }
+
+    private String[] numbersToTelStrings(String[] formatedNumbers){
         String[] formatedContacts = new String[formatedNumbers.length];
         for(int i=0; i<formatedContacts.length; i++){
             formatedContacts[i] = numberToTelString(formatedNumbers[i]);
         }
+
+        return formatedContacts;
+    }
+
+    // Returns the task ID, or the ResultCode (<0) if failed to send the request.
+    private int sendCapabilityRequest(String[] formatedNumbers, IRcsPresenceListener listener){
+        String[] formatedContacts = numbersToTelStrings(formatedNumbers);
+
         // In ms
-        long timeout = RcsSettingUtils.getCapabPollListSubExp(mContext) * 1000;
+        long timeout = RcsSettingUtils.getCapabPollListSubExp(mContext) * 1000L;
         timeout += RcsSettingUtils.getSIPT1Timer(mContext);
 
         // The terminal notification may be received shortly after the time limit of
@@ -170,15 +293,14 @@ public class PresenceSubscriber extends PresenceBase{
                 listener, timeout);
         logger.print("taskId=" + taskId);
 
-        ret = mRcsStackAdaptor.requestCapability(formatedContacts, taskId);
+        int ret = mRcsStackAdaptor.requestCapability(formatedContacts, taskId);
         if(ret < ResultCode.SUCCESS){
             logger.error("requestCapability ret=" + ret + " remove taskId=" + taskId);
             TaskManager.getDefault().removeTask(taskId);
+            return ret;
         }
 
-        ret = taskId;
-
-        return  ret;
+        return taskId;
     }
 
     public int requestAvailability(String contactNumber, IRcsPresenceListener listener,
@@ -190,34 +312,55 @@ public class PresenceSubscriber extends PresenceBase{
             return ret;
         }
 
+        int availabilityExpire = RcsSettingUtils.getAvailabilityCacheExpiration(mContext);
+        availabilityExpire = availabilityExpire>0?availabilityExpire*1000:
+                60*1000; // by default is 60s
+        logger.print("requestAvailability availabilityExpire=" + availabilityExpire);
+
+        TaskManager.getDefault().clearTimeoutAvailabilityTask(availabilityExpire);
+
         if(!forceToNetwork){
             logger.debug("check if we can use the value in cache");
-            int availabilityExpire = RcsSettingUtils.getAvailabilityCacheExpiration(mContext);
-            availabilityExpire = availabilityExpire>0?availabilityExpire*1000:
-                    60*1000; // by default is 60s
-            logger.print("requestAvailability availabilityExpire=" + availabilityExpire);
-
-            TaskManager.getDefault().clearTimeoutAvailabilityTask(availabilityExpire);
-
-            Task task = TaskManager.getDefault().getAvailabilityTaskByContact(formatedContact);
-            if(task != null && task instanceof PresenceAvailabilityTask) {
-                PresenceAvailabilityTask availabilityTask = (PresenceAvailabilityTask)task;
-                if(availabilityTask.getNotifyTimestamp() == 0) {
-                    // The previous one didn't get response yet.
-                    logger.print("requestAvailability: the request is pending in queue");
-                    return ResultCode.SUBSCRIBE_ALREADY_IN_QUEUE;
-                }else {
-                    // not expire yet. Can use the previous value.
-                    logger.print("requestAvailability: the prevous valuedoesn't be expired yet");
-                    return ResultCode.SUBSCRIBE_TOO_FREQUENTLY;
+            RcsPresenceInfo cachedPresenceInfo = mAvailabilityCache.get(formatedContact,
+                    availabilityExpire);
+            if(cachedPresenceInfo != null){
+                logger.print("requestAvailability: use the value in cache");
+                return requestAvailabilityFromCache(cachedPresenceInfo, listener);
+            }
+        }
+
+        // The expired task could be still there since it is cleared in the background.
+        PresenceAvailabilityTask availabilityTask =
+                TaskManager.getDefault().getAvailabilityTaskByContact(formatedContact);
+        if(availabilityTask != null && !availabilityTask.isExpired(availabilityExpire,
+                System.currentTimeMillis())) {
+            // The previous one didn't get the NOTIFY yet. Share its SUBSCRIBE, even for
+            // forceToNetwork since the NOTIFY of it is not received yet.
+            int joined = availabilityTask.addListener(listener);
+            if(joined != PresenceAvailabilityTask.JOIN_REFUSED){
+                logger.print("requestAvailability: join the request pending in queue");
+                if(joined == PresenceAvailabilityTask.JOINED_ACCEPTED && listener != null){
+                    // Got the 200 OK already. Answer it after the caller got the request ID.
+                    Message message = mMsgHandler.obtainMessage(MESSAGE_JOINED_AVAILABILITY,
+                            availabilityTask.mTaskId, 0, listener);
+                    mMsgHandler.sendMessage(message);
                 }
+                return availabilityTask.mTaskId;
+            }
+
+            if(availabilityTask.getNotifyTimestamp() != 0 && !forceToNetwork){
+                // not expire yet. Can use the previous value.
+                logger.print("requestAvailability: the prevous valuedoesn't be expired yet");
+                return ResultCode.SUBSCRIBE_TOO_FREQUENTLY;
             }
         }
 
         boolean isFtSupported = false; // hard code to not support FT at present.
         boolean isChatSupported = false;  // hard code to not support chat at present.
         // Only poll/fetch capability/availability on LTE
-        if(((TelephonyManager.getDefault().getNetworkType() != TelephonyManager.NETWORK_TYPE_LTE)
+        int networkType = TelephonyStateCache.getInstance(mContext).getSnapshot()
+                .getNetworkType();
+        if(((networkType != TelephonyManager.NETWORK_TYPE_LTE)
                 && !isFtSupported && !isChatSupported)){
             logger.error("requestAvailability return ERROR_SERVICE_NOT_AVAILABLE" +
                     " for it is not LTE network");
@@ -249,6 +392,44 @@ public class PresenceSubscriber extends PresenceBase{
         return  ret;
     }
 
+    private int requestAvailabilityFromCache(RcsPresenceInfo presenceInfo,
+            IRcsPresenceListener listener){
+        CachedAvailability cachedAvailability = new CachedAvailability();
+        cachedAvailability.mTaskId = TaskManager.getDefault().generateTaskId();
+        cachedAvailability.mListener = listener;
+        cachedAvailability.mPresenceInfo = presenceInfo;
+
+        // Answer it after the caller got the request ID.
+        Message message = mMsgHandler.obtainMessage(MESSAGE_CACHED_AVAILABILITY,
+                cachedAvailability);
+        mMsgHandler.sendMessage(message);
+
+        return cachedAvailability.mTaskId;
+    }
+
+    private void notifyCachedAvailability(CachedAvailability cachedAvailability){
+        if(cachedAvailability == null){
+            return;
+        }
+
+        if(cachedAvailability.mListener != null){
+            try{
+                cachedAvailability.mListener.onSuccess(cachedAvailability.mTaskId);
+            }catch(RemoteException e){
+                logger.debug("Failed to send the status to client.");
+            }
+        }
+
+        // The information had been saved by PersistService, so broadcast it directly.
+        ArrayList<RcsPresenceInfo> presenceInfoList = new ArrayList<RcsPresenceInfo>();
+        presenceInfoList.add(cachedAvailability.mPresenceInfo);
+        Intent intent = new Intent(RcsPresence.ACTION_PRESENCE_CHANGED);
+        intent.putParcelableArrayListExtra(RcsPresence.EXTRA_PRESENCE_INFO_LIST,
+                presenceInfoList);
+        intent.putExtra("updateLastTimestamp", false);
+        mContext.sendBroadcast(intent);
+    }
+
     private int translateResponse403(PresSipResponse pSipResponse){
         String reasonPhrase = pSipResponse.getReasonPhrase();
         if(reasonPhrase == null){
@@ -318,6 +499,9 @@ public class PresenceSubscriber extends PresenceBase{
                 // Device shall re-attempt subscription after changing the expiration interval in
                 // the Expires header field to be equal to or greater than the expiration interval
                 // within the Min-Expires header field of the 423 response
+                // The UCE interface passes neither the Min-Expires nor the Expires of a
+                // request, the stack takes it from CAPAB_POLL_LIST_SUB_EXP. So it is retried
+                // with back-off as the other temporary errors.
                 ret = ResultCode.SUBSCRIBE_TEMPORARY_ERROR;
                 break;
 
@@ -426,27 +610,88 @@ public class PresenceSubscriber extends PresenceBase{
                         RcsPresenceInfo.ServiceState.OFFLINE, null, System.currentTimeMillis(),
                         RcsPresenceInfo.ServiceState.OFFLINE, null, System.currentTimeMillis());
                 presenceInfoList.add(presenceInfo);
+                mAvailabilityCache.put(presenceInfo);
             }
 
             // Notify presence information changed.
             logger.debug("notify presence changed for 404 error");
-            Intent intent = new Intent(RcsPresence.ACTION_PRESENCE_CHANGED);
-            intent.putParcelableArrayListExtra(RcsPresence.EXTRA_PRESENCE_INFO_LIST,
-                    presenceInfoList);
-            intent.putExtra("updateLastTimestamp", true);
-            launchPersistService(intent);
+            mPresenceInfoAggregator.add(presenceInfoList, true, false);
         } else if(errorCode == ResultCode.SUBSCRIBE_GENIRIC_FAILURE) {
             updateAvailabilityToUnknown(task);
         }
 
+        if(task instanceof PresenceCapabilityTask &&
+                ((PresenceCapabilityTask)task).mContacts != null &&
+                ((PresenceCapabilityTask)task).mContacts.length > 1){
+            int listSize = ((PresenceCapabilityTask)task).mContacts.length;
+            if(errorCode == ResultCode.SUBSCRIBE_TOO_LARGE){
+                mRclSizeController.onTooLarge(listSize);
+                if(resendCapabilityTask((PresenceCapabilityTask)task, (listSize + 1) / 2)){
+                    return;
+                }
+            }else if(errorCode == ResultCode.SUCCESS){
+                mRclSizeController.onAccepted(listSize,
+                        RcsSettingUtils.getMaxNumbersInRCL(mContext));
+            }
+        }
+
+        if(errorCode == ResultCode.SUBSCRIBE_TEMPORARY_ERROR &&
+                task instanceof PresenceCapabilityTask &&
+                mRetryScheduler.scheduleRetry((PresenceCapabilityTask)task,
+                        pSipResponse.getRetryAfter())){
+            return;
+        }
+
+        if(errorCode == ResultCode.SUCCESS && task instanceof PresenceCapabilityTask &&
+                ((PresenceCapabilityTask)task).getRetryCount() > 0){
+            mRetryScheduler.onRetrySucceeded((PresenceCapabilityTask)task);
+        }
+
         handleCallback(task, errorCode, false);
     }
 
-    private void launchPersistService(Intent intent) {
-        ComponentName component = new ComponentName("com.android.service.ims.presence",
-                "com.android.service.ims.presence.PersistService");
-        intent.setComponent(component);
-        mContext.startService(intent);
+    // Called by mRetryScheduler. Sends the task again with the same task ID.
+    private void retryCapabilityTask(PresenceCapabilityTask task){
+        if(TaskManager.getDefault().getTask(task.mTaskId) != task){
+            logger.debug("retryCapabilityTask the task had been removed, taskId=" +
+                    task.mTaskId);
+            return;
+        }
+
+        task.setWaitingForNotify(false);
+        task.restartTimer();
+
+        int ret = mRcsStackAdaptor.requestCapability(numbersToTelStrings(task.mContacts),
+                task.mTaskId);
+        logger.print("retryCapabilityTask taskId=" + task.mTaskId + " ret=" + ret);
+        if(ret < ResultCode.SUCCESS){
+            handleCallback(task, ret, false);
+        }
+    }
+
+    public void dump(PrintWriter pw){
+        mRetryScheduler.dump(pw);
+    }
+
+    // Resends the list of the task by chunks of chunkSize. The request keeps the ID of the task.
+    private boolean resendCapabilityTask(PresenceCapabilityTask task, int chunkSize){
+        String[] contacts = task.mContacts;
+        logger.print("resendCapabilityTask taskId=" + task.mTaskId +
+                " size=" + contacts.length + " chunkSize=" + chunkSize);
+
+        // Don't report the error, the new tasks continue the request.
+        TaskManager.getDefault().removeTask(task.mTaskId);
+
+        CapabilityListRequest listRequest = new CapabilityListRequest(task.mTaskId, contacts,
+                chunkSize, task.mListener,
+                (chunk, chunkListener) -> sendCapabilityRequest(chunk, chunkListener));
+        return listRequest.start() >= ResultCode.SUCCESS;
+    }
+
+    private void sendPresenceInfos(ArrayList<RcsPresenceInfo> presenceInfoList,
+            boolean updateLastTimestamp) {
+        PersistServiceConnection.getInstance(mContext).sendPresenceInfos(presenceInfoList,
+                updateLastTimestamp);
     }
 
     public void retryToGetAvailability() {
@@ -475,22 +720,17 @@ public class PresenceSubscriber extends PresenceBase{
 
         ArrayList<RcsPresenceInfo> rcsPresenceInfoList = new ArrayList<RcsPresenceInfo>();
         rcsPresenceInfoList.add(rcsPresenceInfo);
+        mAvailabilityCache.put(rcsPresenceInfo);
 
         // For single contact number we got 1 NOTIFY only. So regard it as terminated.
         TaskManager.getDefault().onTerminated(rcsPresenceInfo.getContactNumber());
 
-        PresenceAvailabilityTask availabilityTask = TaskManager.getDefault().
-                getAvailabilityTaskByContact(rcsPresenceInfo.getContactNumber());
-        if(availabilityTask != null){
-            availabilityTask.updateNotifyTimestamp();
-        }
+        // All the availability requests of the contact got the answer.
+        TaskManager.getDefault().updateAvailabilityNotifyTimestamp(
+                rcsPresenceInfo.getContactNumber());
 
         // Notify presence information changed.
-        Intent intent = new Intent(RcsPresence.ACTION_PRESENCE_CHANGED);
-        intent.putParcelableArrayListExtra(RcsPresence.EXTRA_PRESENCE_INFO_LIST,
-                rcsPresenceInfoList);
-        intent.putExtra("updateLastTimestamp", true);
-        launchPersistService(intent);
+        mPresenceInfoAggregator.add(rcsPresenceInfoList, true, false);
     }
 
     public void updatePresences(PresRlmiInfo pRlmiInfo, PresResInfo[] pRcsPresenceInfo) {
@@ -514,6 +754,7 @@ public class PresenceSubscriber extends PresenceBase{
                 logger.debug("rcsPresenceInfo=" + rcsPresenceInfo);
 
                 rcsPresenceInfoList.add(rcsPresenceInfo);
+                mAvailabilityCache.put(rcsPresenceInfo);
             }
         }
 
@@ -532,13 +773,10 @@ public class PresenceSubscriber extends PresenceBase{
 
         if (rcsPresenceInfoList.size() > 0) {
             // Notify presence changed
-            Intent intent = new Intent(RcsPresence.ACTION_PRESENCE_CHANGED);
-            intent.putParcelableArrayListExtra(RcsPresence.EXTRA_PRESENCE_INFO_LIST,
-                    rcsPresenceInfoList);
-            logger.debug("broadcast ACTION_PRESENCE_CHANGED, rcsPresenceInfo=" +
-                    rcsPresenceInfoList);
-            intent.putExtra("updateLastTimestamp", true);
-            launchPersistService(intent);
+            logger.debug("notify presence changed, rcsPresenceInfo=" + rcsPresenceInfoList);
+            mPresenceInfoAggregator.add(rcsPresenceInfoList, true, isTerminated);
+        } else if(isTerminated){
+            mPresenceInfoAggregator.flush();
         }
     }
 
@@ -555,7 +793,7 @@ public class PresenceSubscriber extends PresenceBase{
         PresenceTask task = null;
         if(taskTmp != null && (taskTmp instanceof PresenceTask)){
             task = (PresenceTask)taskTmp;
-            task.mSipRequestId = pCmdStatus.getRequestId();
+            TaskManager.getDefault().setSipRequestId(task, pCmdStatus.getRequestId());
             task.mCmdStatus = resultCode;
             TaskManager.getDefault().putTask(task.mTaskId, task);
 
@@ -599,6 +837,9 @@ public class PresenceSubscriber extends PresenceBase{
                 continue;
             }
 
+            // Don't answer from the value got before the error.
+            mAvailabilityCache.remove(PresenceInfoParser.getPhoneFromUri(task.mContacts[i]));
+
             RcsPresenceInfo presenceInfo = new RcsPresenceInfo(
                 PresenceInfoParser.getPhoneFromUri(task.mContacts[i]),
                         RcsPresenceInfo.VolteStatus.VOLTE_UNKNOWN,
@@ -610,13 +851,9 @@ public class PresenceSubscriber extends PresenceBase{
         if(presenceInfoList.size() > 0) {
              // Notify presence information changed.
              logger.debug("notify presence changed for cmd error");
-             Intent intent = new Intent(RcsPresence.ACTION_PRESENCE_CHANGED);
-             intent.putParcelableArrayListExtra(RcsPresence.EXTRA_PRESENCE_INFO_LIST,
-                     presenceInfoList);
 
              // don't update timestamp so it can be subscribed soon.
-             intent.putExtra("updateLastTimestamp", false);
-             launchPersistService(intent);
+             mPresenceInfoAggregator.add(presenceInfoList, false, false);
         }
     }
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.service.ims.presence;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import java.util.HashMap;
+
+import com.android.ims.internal.Logger;
+import com.android.service.ims.TelephonyStateCache;
+
+/**
+ * Learns the RCL size which the RLS accepts.
+ *
+ * A "413 Too Large" halves the ceiling of the current subscription and network. A list of the
+ * ceiling size which got "200 OK" raises it by INCREASE_STEP, but not more often than once in
+ * PROBE_INTERVAL_MS, until it reaches the provisioned max number of entries in RCL again.
+ */
+public class RclSizeController {
+    /*
+     * The logger
+     */
+    private Logger logger = Logger.getLogger(this.getClass().getName());
+
+    private static final int INCREASE_STEP = 5;
+
+    private static final long PROBE_INTERVAL_MS = 10 * 60 * 1000;
+
+    private static class Ceiling {
+        int mSize;
+        long mChangedTime;
+    }
+
+    // Keyed by the phone ID and the network type.
+    private final HashMap<String, Ceiling> mCeilings = new HashMap<String, Ceiling>();
+
+    private final Context mContext;
+
+    public RclSizeController(Context context) {
+        mContext = context;
+    }
+
+    private static String getKey(Context context) {
+        TelephonyStateCache.Snapshot snapshot =
+                TelephonyStateCache.getInstance(context).getSnapshot();
+        return snapshot.getPhoneId() + "/" + snapshot.getNetworkType();
+    }
+
+    /**
+     * @return the size of the RCL to send on the current network.
+     */
+    public synchronized int getListSize(int maxNumbersInRCL) {
+        Ceiling ceiling = mCeilings.get(getKey(mContext));
+        if (ceiling == null) {
+            return maxNumbersInRCL;
+        }
+
+        return Math.min(ceiling.mSize, maxNumbersInRCL);
+    }
+
+    public synchronized void onTooLarge(int listSize) {
+        String key = getKey(mContext);
+        Ceiling ceiling = mCeilings.get(key);
+        if (ceiling == null) {
+            ceiling = new Ceiling();
+            mCeilings.put(key, ceiling);
+        } else {
+            listSize = Math.min(listSize, ceiling.mSize);
+        }
+
+        ceiling.mSize = Math.max(1, listSize / 2);
+        ceiling.mChangedTime = SystemClock.elapsedRealtime();
+        logger.print("onTooLarge key=" + key + " ceiling=" + ceiling.mSize);
+    }
+
+    public synchronized void onAccepted(int listSize, int maxNumbersInRCL) {
+        String key = getKey(mContext);
+        Ceiling ceiling = mCeilings.get(key);
+        if (ceiling == null || listSize < ceiling.mSize) {
+            return;
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        if (now - ceiling.mChangedTime < PROBE_INTERVAL_MS) {
+            return;
+        }
+
+        ceiling.mSize += INCREASE_STEP;
+        ceiling.mChangedTime = now;
+        if (ceiling.mSize >= maxNumbersInRCL) {
+            mCeilings.remove(key);
+        }
+
+        logger.print("onAccepted key=" + key + " ceiling=" + ceiling.mSize);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.service.ims.presence;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.PrintWriter;
+import java.util.Random;
+
+import com.android.ims.internal.Logger;
+
+/**
+ * Retries the capability subscriptions which got a temporary error.
+ *
+ * The delay is a random value up to the capped exponential back-off (full jitter), so the
+ * devices which got the error at the same time don't retry at the same time. It is not less
+ * than the Retry-After of the response. All the retries are posted to the handler of the given
+ * looper.
+ */
+public class SubscribeRetryScheduler {
+    /*
+     * The logger
+     */
+    private Logger logger = Logger.getLogger(this.getClass().getName());
+
+    private static final int MAX_RETRY_COUNT = 3;
+
+    private static final long BASE_DELAY_MS = 2000;
+    private static final long MAX_DELAY_MS = 60 * 1000;
+
+    public interface Sender {
+        void resend(PresenceCapabilityTask task);
+    }
+
+    private final Sender mSender;
+    private final Handler mHandler;
+    private final Random mRandom = new Random();
+
+    // Metrics.
+    private int mScheduledCount = 0;
+    private int mSucceededCount = 0;
+    private int mExhaustedCount = 0;
+
+    public SubscribeRetryScheduler(Looper looper, Sender sender) {
+        mSender = sender;
+        mHandler = new Handler(looper);
+    }
+
+    /**
+     * @param retryAfter the Retry-After of the response in seconds, 0 if there isn't.
+     * @return false if the task had been retried for MAX_RETRY_COUNT times.
+     */
+    public boolean scheduleRetry(final PresenceCapabilityTask task, int retryAfter) {
+        int retryCount = task.getRetryCount();
+        if (retryCount >= MAX_RETRY_COUNT) {
+            synchronized (this) {
+                mExhaustedCount++;
+            }
+            logger.print("scheduleRetry give up taskId=" + task.mTaskId);
+            return false;
+        }
+
+        long delay = getDelay(retryCount, retryAfter);
+        task.setRetryCount(retryCount + 1);
+
+        // Don't time out while waiting for the retry.
+        task.cancelTimer();
+
+        synchronized (this) {
+            mScheduledCount++;
+        }
+        logger.print("scheduleRetry taskId=" + task.mTaskId + " retryCount=" + (retryCount + 1) +
+                " delay=" + delay);
+
+        mHandler.postDelayed(() -> mSender.resend(task), delay);
+        return true;
+    }
+
+    public synchronized void onRetrySucceeded(PresenceCapabilityTask task) {
+        mSucceededCount++;
+        logger.debug("onRetrySucceeded taskId=" + task.mTaskId);
+    }
+
+    private long getDelay(int retryCount, int retryAfter) {
+        long backoff = Math.min(MAX_DELAY_MS, BASE_DELAY_MS << retryCount);
+        long delay = (long) (mRandom.nextDouble() * backoff);
+        if (retryAfter > 0) {
+            delay = Math.max(delay, retryAfter * 1000L);
+        }
+
+        return delay;
+    }
+
+    public synchronized void dump(PrintWriter pw) {
+        pw.println("SubscribeRetryScheduler:");
+        pw.println("  scheduled=" + mScheduledCount);
+        pw.println("  succeeded=" + mSucceededCount);
+        pw.println("  exhausted=" + mExhaustedCount);
+    }
+}
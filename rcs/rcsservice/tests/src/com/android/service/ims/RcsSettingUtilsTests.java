@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.service.ims;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.ims.ImsConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/**
+ * Unit Tests for the provisioned value cache of RcsSettingUtils.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RcsSettingUtilsTests {
+    private static final String TAG = "RcsSettingUtilsTests";
+
+    // The provisioned values one capability request reads. Each of them was a binder call to
+    // ImsConfig before the cache.
+    private static final int READS_PER_REQUEST = 5;
+
+    private static final int REQUEST_COUNT = 100;
+
+    // The items which are loaded together by the first read.
+    private static final int CACHED_ITEM_COUNT = 10;
+
+    private @Mock Context mContext;
+    private @Mock ImsConfig mImsConfig;
+
+    private int mBinderCalls = 0;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(mImsConfig.getProvisionedValue(anyInt())).thenAnswer(invocation -> {
+            mBinderCalls++;
+            return ImsConfig.FeatureValueConstants.ON;
+        });
+        RcsSettingUtils.setConfigInterface(mImsConfig);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        RcsSettingUtils.setConfigInterface(null);
+    }
+
+    private void readCapabilityRequestSettings() {
+        RcsSettingUtils.getCapabilityDiscoveryEnabled(mContext);
+        RcsSettingUtils.getMaxNumbersInRCL(mContext);
+        RcsSettingUtils.getMaxNumbersInRCL(mContext);
+        RcsSettingUtils.getCapabPollListSubExp(mContext);
+        RcsSettingUtils.getSIPT1Timer(mContext);
+    }
+
+    /**
+     * Counts the binder calls to ImsConfig per capability request.
+     */
+    @SmallTest
+    @Test
+    public void testBinderCallsPerRequest() throws Exception {
+        readCapabilityRequestSettings();
+        int firstRequestCalls = mBinderCalls;
+        assertTrue(firstRequestCalls <= CACHED_ITEM_COUNT);
+
+        mBinderCalls = 0;
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            readCapabilityRequestSettings();
+        }
+        assertEquals(0, mBinderCalls);
+
+        Log.i(TAG, "binder calls per request: uncached=" + READS_PER_REQUEST +
+                " first=" + firstRequestCalls + " cached=" + mBinderCalls / REQUEST_COUNT);
+    }
+
+    @SmallTest
+    @Test
+    public void testInvalidateReadsAgain() throws Exception {
+        readCapabilityRequestSettings();
+
+        RcsSettingUtils.invalidateProvisionedValues();
+        mBinderCalls = 0;
+        readCapabilityRequestSettings();
+        assertTrue(mBinderCalls > 0);
+
+        mBinderCalls = 0;
+        readCapabilityRequestSettings();
+        assertEquals(0, mBinderCalls);
+    }
+}
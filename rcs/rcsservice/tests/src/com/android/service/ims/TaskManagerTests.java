@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.service.ims;
+
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+
+import android.os.SystemClock;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit Tests for the task lookups of TaskManager.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TaskManagerTests {
+    private static final String TAG = "TaskManagerTests";
+
+    // The SIP request ids are handed out by the stack, start them away from the task ids.
+    private static final int SIP_REQUEST_ID_BASE = 100000;
+
+    private static final int[] TASK_COUNTS = {10, 100, 1000, 10000};
+
+    private static final int LOOKUP_ROUNDS = 10;
+
+    private TaskManager mTaskManager;
+    private final List<Integer> mTaskIds = new ArrayList<Integer>();
+
+    @Before
+    public void setUp() throws Exception {
+        mTaskManager = TaskManager.getDefault();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        removeTasks();
+    }
+
+    private List<Task> addTasks(int count) {
+        List<Task> tasks = new ArrayList<Task>(count);
+        for (int i = 0; i < count; i++) {
+            int taskId = mTaskManager.addPublishTask("+16505550000", null);
+            mTaskIds.add(taskId);
+
+            Task task = mTaskManager.getTask(taskId);
+            mTaskManager.setSipRequestId(task, SIP_REQUEST_ID_BASE + taskId);
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    private void removeTasks() {
+        for (int taskId : mTaskIds) {
+            mTaskManager.removeTask(taskId);
+        }
+        mTaskIds.clear();
+    }
+
+    @SmallTest
+    @Test
+    public void testGetTaskByRequestId() throws Exception {
+        List<Task> tasks = addTasks(10);
+        for (Task task : tasks) {
+            assertSame(task, mTaskManager.getTaskByRequestId(task.mSipRequestId));
+        }
+
+        Task task = tasks.get(0);
+        mTaskManager.removeTask(task.mTaskId);
+        assertNull(mTaskManager.getTaskByRequestId(task.mSipRequestId));
+    }
+
+    /**
+     * Measures the lookup of the tasks by the SIP request id with 10 to 10,000 tasks.
+     */
+    @LargeTest
+    @Test
+    public void testGetTaskByRequestIdTime() throws Exception {
+        for (int count : TASK_COUNTS) {
+            List<Task> tasks = addTasks(count);
+
+            long start = SystemClock.elapsedRealtimeNanos();
+            for (int round = 0; round < LOOKUP_ROUNDS; round++) {
+                for (Task task : tasks) {
+                    assertSame(task, mTaskManager.getTaskByRequestId(task.mSipRequestId));
+                }
+            }
+            long lookupNs = SystemClock.elapsedRealtimeNanos() - start;
+
+            Log.i(TAG, "tasks=" + count + " lookup=" +
+                    lookupNs / ((long) count * LOOKUP_ROUNDS) + "ns");
+            removeTasks();
+        }
+    }
+}
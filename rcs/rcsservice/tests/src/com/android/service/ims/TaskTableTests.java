@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.service.ims;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+import android.os.Debug;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit Tests for TaskTable.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TaskTableTests {
+    // The size of the ring in TaskTable.
+    private static final int RING_SIZE = 1024;
+
+    // More than the ring, so the churn wraps around it.
+    private static final int TASK_COUNT = 4096;
+
+    // The tasks which are alive at the same time during the churn.
+    private static final int LIVE_TASKS = 16;
+
+    private TaskTable mTable;
+    private Task[] mTasks;
+
+    @Before
+    public void setUp() throws Exception {
+        mTable = new TaskTable();
+        mTasks = new Task[TASK_COUNT];
+        for (int i = 0; i < TASK_COUNT; i++) {
+            mTasks[i] = new Task(i, TaskManager.TASK_TYPE_GET_CAPABILITY, null);
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void testPutReplacesSameKey() throws Exception {
+        Task task = new Task(1, TaskManager.TASK_TYPE_GET_CAPABILITY, null);
+        assertNull(mTable.put(1, mTasks[1]));
+        assertSame(mTasks[1], mTable.put(1, task));
+        assertSame(task, mTable.get(1));
+
+        // The key maps to another task now.
+        assertFalse(mTable.remove(1, mTasks[1]));
+        assertTrue(mTable.remove(1, task));
+        assertNull(mTable.get(1));
+    }
+
+    @SmallTest
+    @Test
+    public void testSlotReusedAfterWrapAround() throws Exception {
+        mTable.put(1, mTasks[1]);
+        assertSame(mTasks[1], mTable.remove(1));
+
+        // The key one ring later takes the freed slot.
+        mTable.put(RING_SIZE + 1, mTasks[RING_SIZE + 1]);
+        assertSame(mTasks[RING_SIZE + 1], mTable.get(RING_SIZE + 1));
+        assertNull(mTable.get(1));
+        assertNull(mTable.remove(1));
+        assertFalse(mTable.remove(1, mTasks[1]));
+        assertSame(mTasks[RING_SIZE + 1], mTable.get(RING_SIZE + 1));
+    }
+
+    @SmallTest
+    @Test
+    public void testOverflowWhenSlotIsHeld() throws Exception {
+        mTable.put(1, mTasks[1]);
+        // The slot is still held by the task one ring behind.
+        mTable.put(RING_SIZE + 1, mTasks[RING_SIZE + 1]);
+        mTable.put(2 * RING_SIZE + 1, mTasks[2 * RING_SIZE + 1]);
+
+        assertSame(mTasks[1], mTable.get(1));
+        assertSame(mTasks[RING_SIZE + 1], mTable.get(RING_SIZE + 1));
+        assertSame(mTasks[2 * RING_SIZE + 1], mTable.get(2 * RING_SIZE + 1));
+
+        // Freeing the slot doesn't lose the tasks in the overflow map.
+        assertSame(mTasks[1], mTable.remove(1));
+        assertNull(mTable.get(1));
+        assertSame(mTasks[RING_SIZE + 1], mTable.get(RING_SIZE + 1));
+
+        // A key in the overflow map is replaced there.
+        Task task = new Task(RING_SIZE + 1, TaskManager.TASK_TYPE_GET_CAPABILITY, null);
+        assertSame(mTasks[RING_SIZE + 1], mTable.put(RING_SIZE + 1, task));
+        assertSame(task, mTable.get(RING_SIZE + 1));
+
+        assertTrue(mTable.remove(RING_SIZE + 1, task));
+        assertSame(mTasks[2 * RING_SIZE + 1], mTable.remove(2 * RING_SIZE + 1));
+        assertNull(mTable.get(RING_SIZE + 1));
+        assertNull(mTable.get(2 * RING_SIZE + 1));
+    }
+
+    @SmallTest
+    @Test
+    public void testRemoveWhileIterating() throws Exception {
+        for (int i = 0; i < RING_SIZE + LIVE_TASKS; i++) {
+            mTable.put(i, mTasks[i]);
+        }
+
+        List<Task> visited = new ArrayList<Task>();
+        mTable.forEach(task -> {
+            visited.add(task);
+            assertTrue(mTable.remove(task.mTaskId, task));
+        });
+
+        assertEquals(RING_SIZE + LIVE_TASKS, visited.size());
+        for (int i = 0; i < RING_SIZE + LIVE_TASKS; i++) {
+            assertTrue(visited.contains(mTasks[i]));
+            assertNull(mTable.get(i));
+        }
+
+        List<Task> left = new ArrayList<Task>();
+        mTable.forEach(task -> left.add(task));
+        assertTrue(left.isEmpty());
+    }
+
+    private void churn() {
+        for (int i = 0; i < TASK_COUNT; i++) {
+            mTable.put(i, mTasks[i]);
+            assertSame(mTasks[i], mTable.get(i));
+            if (i >= LIVE_TASKS) {
+                mTable.remove(i - LIVE_TASKS);
+            }
+        }
+
+        for (int i = TASK_COUNT - LIVE_TASKS; i < TASK_COUNT; i++) {
+            mTable.remove(i, mTasks[i]);
+        }
+    }
+
+    /**
+     * Task churn doesn't allocate once the tasks are created.
+     */
+    @SmallTest
+    @Test
+    public void testChurnDoesNotAllocate() throws Exception {
+        // Warm up so the allocations of the class loading and the JIT are not counted.
+        churn();
+
+        Debug.startAllocCounting();
+        try {
+            Debug.resetThreadAllocCount();
+            churn();
+            assertEquals(0, Debug.getThreadAllocCount());
+        } finally {
+            Debug.stopAllocCounting();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.service.ims.presence;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import android.os.SystemClock;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.ims.IRcsPresenceListener;
+import com.android.ims.RcsManager.ResultCode;
+import com.android.ims.internal.uce.presence.PresSipResponse;
+import com.android.service.ims.TaskManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit Tests for the availability requests which share one SUBSCRIBE.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PresenceAvailabilityTaskTests {
+    private static final String CONTACT = "+16505551234";
+    private static final String OTHER_CONTACT = "+16505555678";
+
+    // The cache window of the availability tasks.
+    private static final long AVAILABILITY_EXPIRE_MS = 200;
+
+    private static final long WAIT_MS = 5000;
+
+    private @Mock IRcsPresenceListener mListener;
+    private @Mock IRcsPresenceListener mJoinedListener;
+    private @Mock IRcsPresenceListener mOtherListener;
+
+    private TaskManager mTaskManager;
+    private TestPresenceBase mPresenceBase;
+    private final List<Integer> mTaskIds = new ArrayList<Integer>();
+
+    private static class TestPresenceBase extends PresenceBase {
+        @Override
+        public void handleSipResponse(PresSipResponse pSipResponse) {
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        mTaskManager = TaskManager.getDefault();
+        mPresenceBase = new TestPresenceBase();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (int taskId : mTaskIds) {
+            mTaskManager.removeTask(taskId);
+        }
+    }
+
+    private PresenceAvailabilityTask addTask(String contact, IRcsPresenceListener listener) {
+        int taskId = mTaskManager.addAvailabilityTask(contact, listener);
+        mTaskIds.add(taskId);
+        return (PresenceAvailabilityTask) mTaskManager.getTask(taskId);
+    }
+
+    private void waitForRemoved(PresenceAvailabilityTask task) {
+        long deadline = SystemClock.elapsedRealtime() + WAIT_MS;
+        while (mTaskManager.getTask(task.mTaskId) != null
+                && SystemClock.elapsedRealtime() < deadline) {
+            SystemClock.sleep(50);
+        }
+    }
+
+    /**
+     * A request which comes between the 200 OK and the NOTIFY shares the SUBSCRIBE, and none
+     * of the requests times out after the NOTIFY.
+     */
+    @SmallTest
+    @Test
+    public void testJoinAfterResponseBeforeNotify() throws Exception {
+        PresenceAvailabilityTask task = addTask(CONTACT, mListener);
+        PresenceAvailabilityTask otherTask = addTask(OTHER_CONTACT, mOtherListener);
+
+        mPresenceBase.handleCallback(task, ResultCode.SUCCESS, true);
+        mPresenceBase.handleCallback(task, ResultCode.SUCCESS, false);
+        verify(mListener, times(1)).onSuccess(task.mTaskId);
+
+        // The caller sends the success to the listener which joins after the 200 OK.
+        assertEquals(PresenceAvailabilityTask.JOINED_ACCEPTED, task.addListener(mJoinedListener));
+        assertSame(task, mTaskManager.getAvailabilityTaskByContact(CONTACT));
+
+        mTaskManager.updateAvailabilityNotifyTimestamp(CONTACT);
+        assertTrue(task.getNotifyTimestamp() != 0);
+        assertEquals(PresenceAvailabilityTask.JOIN_REFUSED, task.addListener(mOtherListener));
+
+        mTaskManager.clearTimeoutAvailabilityTask(AVAILABILITY_EXPIRE_MS);
+        verify(mOtherListener, timeout(WAIT_MS)).onTimeout(otherTask.mTaskId);
+        waitForRemoved(task);
+        assertNull(mTaskManager.getTask(task.mTaskId));
+
+        verify(mListener, never()).onTimeout(anyInt());
+        verify(mJoinedListener, never()).onTimeout(anyInt());
+    }
+
+    @SmallTest
+    @Test
+    public void testJoinBeforeResponse() throws Exception {
+        PresenceAvailabilityTask task = addTask(CONTACT, mListener);
+
+        assertEquals(PresenceAvailabilityTask.JOINED, task.addListener(mJoinedListener));
+
+        mPresenceBase.handleCallback(task, ResultCode.SUCCESS, false);
+        verify(mListener, times(1)).onSuccess(task.mTaskId);
+        verify(mJoinedListener, times(1)).onSuccess(task.mTaskId);
+    }
+
+    @SmallTest
+    @Test
+    public void testNoJoinAfterError() throws Exception {
+        PresenceAvailabilityTask task = addTask(CONTACT, mListener);
+
+        mPresenceBase.handleCallback(task, ResultCode.SUBSCRIBE_GENIRIC_FAILURE, false);
+        verify(mListener, times(1)).onError(task.mTaskId, ResultCode.SUBSCRIBE_GENIRIC_FAILURE);
+        assertEquals(PresenceAvailabilityTask.JOIN_REFUSED, task.addListener(mJoinedListener));
+        assertNull(mTaskManager.getTask(task.mTaskId));
+    }
+
+    @SmallTest
+    @Test
+    public void testNotifyStampsAllTasksOfContact() throws Exception {
+        PresenceAvailabilityTask task = addTask(CONTACT, mListener);
+        mTaskManager.updateAvailabilityNotifyTimestamp(CONTACT);
+
+        // A forced request after the NOTIFY sends a new SUBSCRIBE.
+        PresenceAvailabilityTask newTask = addTask(CONTACT, mJoinedListener);
+        assertSame(newTask, mTaskManager.getAvailabilityTaskByContact(CONTACT));
+
+        mTaskManager.updateAvailabilityNotifyTimestamp(CONTACT);
+        assertTrue(task.getNotifyTimestamp() != 0);
+        assertTrue(newTask.getNotifyTimestamp() != 0);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.service.ims.presence;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.ims.RcsPresenceInfo;
+import com.android.ims.RcsPresenceInfo.ServiceState;
+import com.android.ims.RcsPresenceInfo.VolteStatus;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit Tests for PresenceInfoAggregator.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PresenceInfoAggregatorTests {
+    private static final long WAIT_MS = 5000;
+
+    // Longer than the flush window of the aggregator.
+    private static final long WINDOW_WAIT_MS = 500;
+
+    private HandlerThread mThread;
+    private PresenceInfoAggregator mAggregator;
+
+    private final List<ArrayList<RcsPresenceInfo>> mBatches =
+            new ArrayList<ArrayList<RcsPresenceInfo>>();
+    private final List<Thread> mSendThreads = new ArrayList<Thread>();
+
+    @Before
+    public void setUp() throws Exception {
+        mThread = new HandlerThread("PresenceInfoAggregatorTests");
+        mThread.start();
+        mAggregator = new PresenceInfoAggregator(mThread.getLooper(),
+                (presenceInfoList, updateLastTimestamp) -> {
+                    mBatches.add(presenceInfoList);
+                    mSendThreads.add(Thread.currentThread());
+                });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mThread.quitSafely();
+    }
+
+    private static RcsPresenceInfo createPresenceInfo(String number, int state, long timestamp) {
+        return new RcsPresenceInfo(number, VolteStatus.VOLTE_ENABLED, state, null, timestamp,
+                state, null, timestamp);
+    }
+
+    private static List<RcsPresenceInfo> asList(RcsPresenceInfo presenceInfo) {
+        List<RcsPresenceInfo> presenceInfoList = new ArrayList<RcsPresenceInfo>();
+        presenceInfoList.add(presenceInfo);
+        return presenceInfoList;
+    }
+
+    private void waitForLooper() throws Exception {
+        waitForLooper(0);
+    }
+
+    private void waitForLooper(long delayMs) throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        new Handler(mThread.getLooper()).postDelayed(latch::countDown, delayMs);
+        assertTrue(latch.await(WAIT_MS + delayMs, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * The results of one contact in different formats are sent as one.
+     */
+    @SmallTest
+    @Test
+    public void testCoalesceByFormattedNumber() throws Exception {
+        mAggregator.add(asList(createPresenceInfo("+1 650-555-1234", ServiceState.OFFLINE,
+                1000L)), true, false);
+        mAggregator.add(asList(createPresenceInfo("6505551234", ServiceState.ONLINE, 2000L)),
+                true, true);
+
+        waitForLooper();
+        assertEquals(1, mBatches.size());
+        assertEquals(1, mBatches.get(0).size());
+        RcsPresenceInfo presenceInfo = mBatches.get(0).get(0);
+        assertEquals(ServiceState.ONLINE,
+                presenceInfo.getServiceState(RcsPresenceInfo.ServiceType.VOLTE_CALL));
+        assertEquals(2000L, presenceInfo.getTimeStamp(RcsPresenceInfo.ServiceType.VOLTE_CALL));
+    }
+
+    /**
+     * The results of the single NOTIFYs are held for the flush window and sent as one batch.
+     */
+    @SmallTest
+    @Test
+    public void testFlushAfterWindow() throws Exception {
+        mAggregator.add(asList(createPresenceInfo("6505551234", ServiceState.ONLINE, 1000L)),
+                true, false);
+        mAggregator.add(asList(createPresenceInfo("6505555678", ServiceState.OFFLINE, 1000L)),
+                true, false);
+
+        waitForLooper(WINDOW_WAIT_MS);
+        assertEquals(1, mBatches.size());
+        assertEquals(2, mBatches.get(0).size());
+    }
+
+    /**
+     * The batches are sent on the looper in the order they were flushed.
+     */
+    @SmallTest
+    @Test
+    public void testSendOnLooperInOrder() throws Exception {
+        mAggregator.add(asList(createPresenceInfo("6505551234", ServiceState.ONLINE, 1000L)),
+                true, false);
+        // A result of the other kind flushes the pending batch first.
+        mAggregator.add(asList(createPresenceInfo("6505555678", ServiceState.ONLINE, 1000L)),
+                false, true);
+
+        waitForLooper();
+        assertEquals(2, mBatches.size());
+        assertEquals("6505551234", mBatches.get(0).get(0).getContactNumber());
+        assertEquals("6505555678", mBatches.get(1).get(0).getContactNumber());
+        for (Thread thread : mSendThreads) {
+            assertSame(mThread, thread);
+        }
+        assertFalse(mSendThreads.contains(Thread.currentThread()));
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.service.ims.presence;
+
+import static junit.framework.Assert.assertEquals;
+
+import android.os.SystemClock;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.ims.RcsPresenceInfo;
+import com.android.ims.RcsPresenceInfo.ServiceState;
+import com.android.ims.RcsPresenceInfo.ServiceType;
+import com.android.ims.internal.uce.presence.PresResInfo;
+import com.android.ims.internal.uce.presence.PresResInstanceInfo;
+import com.android.ims.internal.uce.presence.PresTupleInfo;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit Tests for PresenceInfoParser.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PresenceInfoParserTests {
+    private static final String TAG = "PresenceInfoParserTests";
+
+    private static final String MMTEL_VIDEO_TAG =
+            "+g.3gpp.icsi-ref=\"urn%3Aurn-7%3A3gpp-service.ims.icsi.mmtel\";video";
+    private static final String MMTEL_TAG =
+            "+g.3gpp.icsi-ref=\"urn%3Aurn-7%3A3gpp-service.ims.icsi.mmtel\"";
+
+    private static final int[] RESOURCE_COUNTS = {100, 1000};
+
+    private static final int PARSE_ROUNDS = 10;
+
+    private static String getNumber(int index) {
+        return "+1650555" + String.format("%04d", index);
+    }
+
+    private static PresTupleInfo createTuple(String featureTag, String number) {
+        PresTupleInfo tupleInfo = new PresTupleInfo();
+        tupleInfo.setFeatureTag(featureTag);
+        tupleInfo.setContactUri("tel:" + number);
+        return tupleInfo;
+    }
+
+    private static PresResInfo createResource(String number, String... featureTags) {
+        PresTupleInfo[] tupleInfos = new PresTupleInfo[featureTags.length];
+        for (int i = 0; i < featureTags.length; i++) {
+            tupleInfos[i] = createTuple(featureTags[i], number);
+        }
+
+        PresResInstanceInfo instanceInfo = new PresResInstanceInfo();
+        instanceInfo.setResInstanceState(PresResInstanceInfo.UCE_PRES_RES_INSTANCE_STATE_ACTIVE);
+        instanceInfo.setTupleInfo(tupleInfos);
+
+        PresResInfo resInfo = new PresResInfo();
+        resInfo.setResUri("tel:" + number);
+        resInfo.setInstanceInfo(instanceInfo);
+        return resInfo;
+    }
+
+    // A NOTIFY of count contacts, one of ten is in the NOTIFY twice.
+    private static PresResInfo[] createResources(int count) {
+        PresResInfo[] resInfos = new PresResInfo[count];
+        for (int i = 0; i < count; i++) {
+            int contact = (i % 10 == 9) ? i - 1 : i;
+            resInfos[i] = (i % 2 == 0) ? createResource(getNumber(contact), MMTEL_TAG) :
+                    createResource(getNumber(contact), MMTEL_VIDEO_TAG, MMTEL_TAG);
+        }
+        return resInfos;
+    }
+
+    private static RcsPresenceInfo parseTuple(String featureTag) {
+        PresTupleInfo[] tupleInfos = {createTuple(featureTag, getNumber(1))};
+        return PresenceInfoParser.getPresenceInfoFromTuple("tel:" + getNumber(1), tupleInfos);
+    }
+
+    private static void assertCapabilities(String featureTag, int voiceCallState,
+            int videoCallState) {
+        // The second time the tag is served from the received tags.
+        for (int i = 0; i < 2; i++) {
+            RcsPresenceInfo presenceInfo = parseTuple(featureTag);
+            assertEquals(featureTag, voiceCallState,
+                    presenceInfo.getServiceState(ServiceType.VOLTE_CALL));
+            assertEquals(featureTag, videoCallState,
+                    presenceInfo.getServiceState(ServiceType.VT_CALL));
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void testCanonicalizeFeatureTag() throws Exception {
+        String canonicalTag = PresenceInfoParser.canonicalizeFeatureTag(MMTEL_VIDEO_TAG);
+        assertEquals("+g.3gpp.icsi-ref=urn:urn-7:3gpp-service.ims.icsi.mmtel;video",
+                canonicalTag);
+        assertEquals(canonicalTag, PresenceInfoParser.canonicalizeFeatureTag(
+                "video; +G.3GPP.ICSI-REF=\"urn:urn-7:3gpp-service.ims.icsi.mmtel\""));
+
+        assertEquals("+g.gsma.rcs.telephony=cs,volte",
+                PresenceInfoParser.canonicalizeFeatureTag("+g.gsma.rcs.telephony=\"volte, cs\""));
+    }
+
+    @SmallTest
+    @Test
+    public void testFeatureTagCapabilities() throws Exception {
+        assertCapabilities(MMTEL_VIDEO_TAG, ServiceState.ONLINE, ServiceState.ONLINE);
+        assertCapabilities(MMTEL_TAG, ServiceState.ONLINE, ServiceState.OFFLINE);
+        assertCapabilities("+g.gsma.rcs.telephony=\"volte,cs\";video", ServiceState.ONLINE,
+                ServiceState.ONLINE);
+        assertCapabilities("+g.gsma.rcs.telephony=\"cs\";video", ServiceState.OFFLINE,
+                ServiceState.ONLINE);
+        assertCapabilities("video;+g.3gpp.icsi-ref=\"urn:urn-7:3gpp-service.ims.icsi.mmtel\"",
+                ServiceState.ONLINE, ServiceState.ONLINE);
+
+        // The unknown tags don't change the states.
+        assertCapabilities("+g.3gpp.iari-ref=\"urn%3Aurn-7%3A3gpp-application.ims.iari.rcse.im\"",
+                ServiceState.UNKNOWN, ServiceState.UNKNOWN);
+    }
+
+    @SmallTest
+    @Test
+    public void testMergeResourcesOfSameContact() throws Exception {
+        PresResInfo[] resInfos = {
+            createResource(getNumber(1), MMTEL_TAG),
+            createResource(getNumber(2), MMTEL_TAG),
+            createResource(getNumber(1), MMTEL_VIDEO_TAG)};
+
+        RcsPresenceInfo[] presenceInfos =
+                PresenceInfoParser.getPresenceInfosFromPresenceRes(null, resInfos);
+        assertEquals(2, presenceInfos.length);
+
+        // The order of the resources is kept, and ONLINE wins per service.
+        assertEquals(getNumber(1), presenceInfos[0].getContactNumber());
+        assertEquals(ServiceState.ONLINE, presenceInfos[0].getServiceState(ServiceType.VOLTE_CALL));
+        assertEquals(ServiceState.ONLINE, presenceInfos[0].getServiceState(ServiceType.VT_CALL));
+        assertEquals(getNumber(2), presenceInfos[1].getContactNumber());
+        assertEquals(ServiceState.OFFLINE, presenceInfos[1].getServiceState(ServiceType.VT_CALL));
+    }
+
+    /**
+     * Measures the parsing of the RLMI NOTIFYs with 100 and 1,000 resources.
+     */
+    @LargeTest
+    @Test
+    public void testParseResourcesTime() throws Exception {
+        for (int count : RESOURCE_COUNTS) {
+            PresResInfo[] resInfos = createResources(count);
+            int contacts = count - count / 10;
+
+            long start = SystemClock.elapsedRealtimeNanos();
+            for (int round = 0; round < PARSE_ROUNDS; round++) {
+                assertEquals(contacts, PresenceInfoParser.getPresenceInfosFromPresenceRes(
+                        null, resInfos).length);
+            }
+            long parseNs = SystemClock.elapsedRealtimeNanos() - start;
+
+            Log.i(TAG, "resources=" + count + " parse=" +
+                    parseNs / PARSE_ROUNDS / 1000 + "us");
+        }
+    }
+}